@@ -0,0 +1,217 @@
+package com.transittracker.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable String to String map for large id to name lookups.
+ *
+ * <p>
+ * A {@code HashMap<String, String>} costs a node, a key String and its array
+ * per entry, around 80 bytes plus the key characters. Here all keys share one
+ * char array, entries are parallel int arrays, and the hash table is an
+ * open-addressing array of entry indexes. Values are deduplicated, so repeated
+ * names (trip headsigns are shared by hundreds of trips) are stored once. An
+ * entry costs roughly its key characters plus 20 bytes.
+ *
+ * <p>
+ * Lookups allocate nothing. Instances are built with {@link Builder} and are
+ * safe to share between threads once published.
+ */
+public final class CompactStringMap {
+
+    public static final CompactStringMap EMPTY = new Builder().build();
+
+    private final char[] keyChars;
+    // Entry i's key is keyChars[keyOffsets[i] .. keyOffsets[i + 1])
+    private final int[] keyOffsets;
+    private final int[] keyHashes;
+    private final int[] valueIds;
+    private final String[] values;
+    // Entry index + 1 per slot, 0 for empty; length is a power of two
+    private final int[] slots;
+    private final int size;
+
+    private CompactStringMap(char[] keyChars, int[] keyOffsets, int[] keyHashes, int[] valueIds,
+            String[] values, int[] slots, int size) {
+        this.keyChars = keyChars;
+        this.keyOffsets = keyOffsets;
+        this.keyHashes = keyHashes;
+        this.valueIds = valueIds;
+        this.values = values;
+        this.slots = slots;
+        this.size = size;
+    }
+
+    /**
+     * Returns the value for a key, or null if there is none.
+     */
+    public String get(String key) {
+        if (key == null)
+            return null;
+        int entry = find(key, key.hashCode());
+        return entry < 0 ? null : values[valueIds[entry]];
+    }
+
+    public boolean containsKey(String key) {
+        return key != null && find(key, key.hashCode()) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls the action for every entry, in no particular order. Keys are
+     * materialized as new Strings.
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        for (int slot : slots) {
+            int entry = slot - 1;
+            if (entry >= 0) {
+                String key = new String(keyChars, keyOffsets[entry], keyOffsets[entry + 1] - keyOffsets[entry]);
+                action.accept(key, values[valueIds[entry]]);
+            }
+        }
+    }
+
+    /**
+     * Number of distinct values stored.
+     */
+    public int distinctValues() {
+        return values.length;
+    }
+
+    /**
+     * Approximate heap footprint in bytes, assuming compressed oops and
+     * compact (Latin-1) strings for the values.
+     */
+    public long estimatedBytes() {
+        long bytes = 16 + 2L * keyChars.length
+                + 16 + 4L * keyOffsets.length
+                + 16 + 4L * keyHashes.length
+                + 16 + 4L * valueIds.length
+                + 16 + 4L * slots.length
+                + 16 + 4L * values.length;
+        for (String value : values) {
+            bytes += 24 + 16 + value.length();
+        }
+        return bytes;
+    }
+
+    private int find(String key, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask;; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (entry < 0)
+                return -1;
+            if (keyHashes[entry] == hash && keyEquals(entry, key))
+                return entry;
+        }
+    }
+
+    private boolean keyEquals(int entry, String key) {
+        int start = keyOffsets[entry];
+        int length = keyOffsets[entry + 1] - start;
+        if (length != key.length())
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (keyChars[start + i] != key.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Accumulates entries for a {@link CompactStringMap}. Null keys and values
+     * are ignored; a repeated key keeps the last value, as with
+     * {@link Map#put}.
+     */
+    public static final class Builder {
+
+        private char[] keyChars = new char[256];
+        private int charCount;
+        private int[] keyOffsets = new int[17];
+        private int[] keyHashes = new int[16];
+        private int[] valueIds = new int[16];
+        private int count;
+
+        private final Map<String, Integer> valueIdsByValue = new HashMap<>();
+        private String[] values = new String[16];
+
+        public Builder put(String key, String value) {
+            if (key == null || value == null)
+                return this;
+
+            if (count == keyHashes.length) {
+                keyOffsets = Arrays.copyOf(keyOffsets, count * 2 + 1);
+                keyHashes = Arrays.copyOf(keyHashes, count * 2);
+                valueIds = Arrays.copyOf(valueIds, count * 2);
+            }
+            if (charCount + key.length() > keyChars.length) {
+                keyChars = Arrays.copyOf(keyChars, Math.max(keyChars.length * 2, charCount + key.length()));
+            }
+
+            key.getChars(0, key.length(), keyChars, charCount);
+            keyOffsets[count] = charCount;
+            charCount += key.length();
+            keyOffsets[count + 1] = charCount;
+            keyHashes[count] = key.hashCode();
+            valueIds[count] = valueId(value);
+            count++;
+            return this;
+        }
+
+        public CompactStringMap build() {
+            // Load factor of at most 0.5 keeps probe sequences short
+            int capacity = Integer.highestOneBit(Math.max(4, count) * 2 - 1) << 1;
+            int[] slots = new int[capacity];
+            int[] offsets = Arrays.copyOf(keyOffsets, count + 1);
+            int[] hashes = Arrays.copyOf(keyHashes, count);
+            int[] ids = Arrays.copyOf(valueIds, count);
+            char[] chars = Arrays.copyOf(keyChars, charCount);
+            String[] distinct = Arrays.copyOf(values, valueIdsByValue.size());
+
+            int size = 0;
+            int mask = capacity - 1;
+            entries: for (int entry = 0; entry < count; entry++) {
+                int slot = spread(hashes[entry]) & mask;
+                for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+                    int other = slots[slot] - 1;
+                    if (hashes[other] == hashes[entry] && sameKey(chars, offsets, other, entry)) {
+                        // Repeated key: the later value wins
+                        ids[other] = ids[entry];
+                        continue entries;
+                    }
+                }
+                slots[slot] = entry + 1;
+                size++;
+            }
+            return new CompactStringMap(chars, offsets, hashes, ids, distinct, slots, size);
+        }
+
+        private static boolean sameKey(char[] chars, int[] offsets, int a, int b) {
+            return Arrays.equals(chars, offsets[a], offsets[a + 1], chars, offsets[b], offsets[b + 1]);
+        }
+
+        private int valueId(String value) {
+            Integer id = valueIdsByValue.get(value);
+            if (id != null)
+                return id;
+
+            int next = valueIdsByValue.size();
+            if (next == values.length) {
+                values = Arrays.copyOf(values, next * 2);
+            }
+            values[next] = value;
+            valueIdsByValue.put(value, next);
+            return next;
+        }
+    }
+}
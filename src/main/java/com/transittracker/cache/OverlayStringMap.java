@@ -0,0 +1,100 @@
+package com.transittracker.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable String to String map made of a compact base and a small overlay
+ * of later changes, so a handful of updates doesn't require rebuilding the
+ * whole base. A null overlay value is a tombstone hiding the base entry.
+ *
+ * <p>
+ * {@link #with(Map)} returns a new map and never modifies this one. Once the
+ * overlay grows past an eighth of the base (or 1024 entries, whichever is
+ * larger) the two are merged into a new base, which keeps lookups to at most
+ * two probes and bounds the overlay's boxed overhead.
+ */
+public final class OverlayStringMap {
+
+    public static final OverlayStringMap EMPTY = new OverlayStringMap(CompactStringMap.EMPTY, Map.of());
+
+    private static final int MIN_COMPACTION_THRESHOLD = 1024;
+
+    private final CompactStringMap base;
+    private final Map<String, String> overlay;
+
+    private OverlayStringMap(CompactStringMap base, Map<String, String> overlay) {
+        this.base = base;
+        this.overlay = overlay;
+    }
+
+    public static OverlayStringMap of(CompactStringMap base) {
+        return new OverlayStringMap(base, Map.of());
+    }
+
+    public String get(String key) {
+        if (key == null)
+            return null;
+        if (overlay.containsKey(key))
+            return overlay.get(key);
+        return base.get(key);
+    }
+
+    /**
+     * Returns a map with the changes applied on top of this one. A null value
+     * removes the key.
+     */
+    public OverlayStringMap with(Map<String, String> changes) {
+        if (changes.isEmpty())
+            return this;
+
+        Map<String, String> merged = new HashMap<>(overlay);
+        merged.putAll(changes);
+        if (merged.size() > Math.max(MIN_COMPACTION_THRESHOLD, base.size() / 8)) {
+            return of(compact(base, merged));
+        }
+        return new OverlayStringMap(base, Collections.unmodifiableMap(merged));
+    }
+
+    /**
+     * Number of keys with a value.
+     */
+    public int size() {
+        int size = base.size();
+        for (Map.Entry<String, String> entry : overlay.entrySet()) {
+            boolean inBase = base.containsKey(entry.getKey());
+            if (entry.getValue() == null && inBase)
+                size--;
+            else if (entry.getValue() != null && !inBase)
+                size++;
+        }
+        return size;
+    }
+
+    /**
+     * Number of distinct values in the compact base.
+     */
+    public int distinctValues() {
+        return base.distinctValues();
+    }
+
+    /**
+     * Approximate heap footprint in bytes: the base's estimate plus a rough
+     * 100 bytes per overlay entry for its node, key and value.
+     */
+    public long estimatedBytes() {
+        return base.estimatedBytes() + 100L * overlay.size();
+    }
+
+    private static CompactStringMap compact(CompactStringMap base, Map<String, String> overlay) {
+        CompactStringMap.Builder builder = new CompactStringMap.Builder();
+        base.forEach((key, value) -> {
+            if (!overlay.containsKey(key))
+                builder.put(key, value);
+        });
+        // The builder skips null values, which drops the tombstoned keys
+        overlay.forEach(builder::put);
+        return builder.build();
+    }
+}
@@ -0,0 +1,143 @@
+package com.transittracker.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of serialized responses for one version of the underlying data,
+ * bounded by entry count and by total bytes.
+ *
+ * <p>
+ * Every lookup and store carries the data versions the caller read before
+ * executing. A lookup with newer versions than the cache holds discards every
+ * entry, so a response is never served across a data update; a store computed
+ * from older versions is dropped. Versions only move forward, so a slow
+ * request that read the previous version can't roll the cache back.
+ */
+public final class ResponseCache {
+
+    // Rough per-entry overhead of the map node, key String and entry object
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long snapshotVersion;
+    private long catalogVersion;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ResponseCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached response for the key, or null.
+     */
+    public synchronized CachedResponse get(String key, long snapshotVersion, long catalogVersion) {
+        if (!currentFor(snapshotVersion, catalogVersion)) {
+            misses++;
+            return null;
+        }
+        CachedResponse response = entries.get(key);
+        if (response == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return response;
+    }
+
+    public synchronized void put(String key, long snapshotVersion, long catalogVersion, CachedResponse response) {
+        if (!currentFor(snapshotVersion, catalogVersion)) {
+            return;
+        }
+        long size = sizeOf(key, response);
+        if (size > maxBytes) {
+            return;
+        }
+
+        CachedResponse previous = entries.put(key, response);
+        if (previous != null) {
+            bytes -= sizeOf(key, previous);
+        }
+        bytes += size;
+
+        Iterator<Map.Entry<String, CachedResponse>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            Map.Entry<String, CachedResponse> entry = eldest.next();
+            bytes -= sizeOf(entry.getKey(), entry.getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Moves the cache to newer versions, clearing it, and returns false if the
+     * given versions are older than the cache's.
+     */
+    private boolean currentFor(long snapshotVersion, long catalogVersion) {
+        if (snapshotVersion < this.snapshotVersion || catalogVersion < this.catalogVersion) {
+            return false;
+        }
+        if (snapshotVersion != this.snapshotVersion || catalogVersion != this.catalogVersion) {
+            entries.clear();
+            bytes = 0;
+            this.snapshotVersion = snapshotVersion;
+            this.catalogVersion = catalogVersion;
+        }
+        return true;
+    }
+
+    private static long sizeOf(String key, CachedResponse response) {
+        return ENTRY_OVERHEAD + 2L * key.length() + response.getBody().length;
+    }
+
+    /**
+     * A serialized response body and its content type.
+     */
+    public static final class CachedResponse {
+
+        private final String contentType;
+        private final byte[] body;
+
+        public CachedResponse(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
@@ -1,41 +1,148 @@
 package com.transittracker.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.net.http.HttpClient;
 import java.time.Duration;
+import java.time.ZoneId;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
 
 @Configuration
+@EnableConfigurationProperties(RealtimeFeedProperties.class)
 public class GtfsConfig {
 
-    @Value("${gtfs.realtime.trip-updates-url}")
+    // Single-feed shorthand, used when gtfs.realtime.feeds is not configured
+    @Value("${gtfs.realtime.trip-updates-url:}")
     private String tripUpdatesUrl;
 
-    @Value("${gtfs.realtime.vehicle-positions-url}")
+    @Value("${gtfs.realtime.vehicle-positions-url:}")
     private String vehiclePositionsUrl;
 
-    @Value("${gtfs.static.download-urls}")
+    @Value("${gtfs.realtime.poll-interval:30s}")
+    private Duration realtimePollInterval;
+
+    @Value("${gtfs.realtime.min-poll-interval:5s}")
+    private Duration realtimeMinPollInterval;
+
+    @Value("${gtfs.realtime.max-poll-interval:2m}")
+    private Duration realtimeMaxPollInterval;
+
+    @Value("${gtfs.realtime.poll-jitter:2s}")
+    private Duration realtimePollJitter;
+
+    @Value("${gtfs.realtime.adaptive-polling:true}")
+    private boolean realtimeAdaptivePolling;
+
+    @Value("${gtfs.realtime.fetch-timeout:10s}")
+    private Duration realtimeFetchTimeout;
+
+    // Empty means the system default
+    @Value("${gtfs.realtime.timezone:}")
+    private String realtimeTimezone;
+
+    // Feeds without an agency; agencies list theirs under gtfs.realtime.feeds[n].static-urls
+    @Value("${gtfs.static.download-urls:}")
     private List<String> staticGtfsUrls;
 
+    @Value("${gtfs.static.batch-size:1000}")
+    private int staticBatchSize;
+
+    @Value("${gtfs.static.load-parallelism:4}")
+    private int staticLoadParallelism;
+
+    // Zero disables reloading
+    @Value("${gtfs.static.reload-interval:6h}")
+    private Duration staticReloadInterval;
+
+    // Empty disables snapshots
+    @Value("${gtfs.static.snapshot-dir:}")
+    private String staticSnapshotDir;
+
+    private final RealtimeFeedProperties realtimeFeedProperties;
+
+    public GtfsConfig(RealtimeFeedProperties realtimeFeedProperties) {
+        this.realtimeFeedProperties = realtimeFeedProperties;
+    }
+
     @Bean
     public HttpClient gtfsHttpClient() {
         return HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(10))
+                // Async responses are handed off on virtual threads instead of the
+                // client's default cached platform thread pool
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
                 .build();
     }
 
-    public String getTripUpdatesUrl() {
-        return tripUpdatesUrl;
+    /**
+     * The realtime feeds to poll: the configured gtfs.realtime.feeds list, or a
+     * single un-namespaced feed built from the trip-updates-url and
+     * vehicle-positions-url shorthand.
+     */
+    public List<RealtimeFeed> getRealtimeFeeds() {
+        if (!realtimeFeedProperties.getFeeds().isEmpty()) {
+            return realtimeFeedProperties.getFeeds();
+        }
+        RealtimeFeed feed = new RealtimeFeed("", emptyToNull(tripUpdatesUrl), emptyToNull(vehiclePositionsUrl),
+                realtimePollInterval, realtimeFetchTimeout);
+        feed.setMinPollInterval(realtimeMinPollInterval);
+        feed.setMaxPollInterval(realtimeMaxPollInterval);
+        feed.setPollJitter(realtimePollJitter);
+        feed.setAdaptivePolling(realtimeAdaptivePolling);
+        if (!realtimeTimezone.isEmpty()) {
+            feed.setTimezone(ZoneId.of(realtimeTimezone));
+        }
+        return List.of(feed);
     }
 
-    public String getVehiclePositionsUrl() {
-        return vehiclePositionsUrl;
+    /**
+     * Every static feed: gtfs.static.download-urls followed by the static-urls
+     * of each realtime feed, in configuration order.
+     */
+    public List<String> getStaticGtfsUrls() {
+        Set<String> urls = new LinkedHashSet<>(staticGtfsUrls);
+        for (RealtimeFeed feed : realtimeFeedProperties.getFeeds()) {
+            urls.addAll(feed.getStaticUrls());
+        }
+        return List.copyOf(urls);
     }
 
-    public List<String> getStaticGtfsUrls() {
-        return staticGtfsUrls;
+    /**
+     * The agency whose namespace a static feed's ids get, or "" if no realtime
+     * feed lists it.
+     */
+    public String getStaticAgency(String staticUrl) {
+        for (RealtimeFeed feed : realtimeFeedProperties.getFeeds()) {
+            if (feed.getStaticUrls().contains(staticUrl)) {
+                return feed.getAgency();
+            }
+        }
+        return "";
+    }
+
+    public int getStaticBatchSize() {
+        return staticBatchSize;
+    }
+
+    public int getStaticLoadParallelism() {
+        return staticLoadParallelism;
+    }
+
+    public Duration getStaticReloadInterval() {
+        return staticReloadInterval;
+    }
+
+    public String getStaticSnapshotDir() {
+        return staticSnapshotDir;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
     }
 }
@@ -0,0 +1,146 @@
+package com.transittracker.config;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One agency's pair of GTFS Realtime endpoints and how often to poll them.
+ */
+public class RealtimeFeed {
+    // Prefixed onto trip, route, stop and vehicle ids ("grt:7") so agencies
+    // sharing ids don't collide. Leave empty to keep the raw ids.
+    private String agency = "";
+    private String tripUpdatesUrl;
+    private String vehiclePositionsUrl;
+    // Starting interval before the publish cadence is known, and the base for
+    // backoff after failures
+    private Duration pollInterval = Duration.ofSeconds(30);
+    private Duration minPollInterval = Duration.ofSeconds(5);
+    private Duration maxPollInterval = Duration.ofMinutes(2);
+    private Duration pollJitter = Duration.ofSeconds(2);
+    // When false, polls at a fixed pollInterval instead of following the feed's cadence
+    private boolean adaptivePolling = true;
+    private Duration timeout = Duration.ofSeconds(10);
+    // Static GTFS zips of this agency. Their route, stop and trip ids get the
+    // same namespace, so static and realtime data refer to each other.
+    private List<String> staticUrls = new ArrayList<>();
+    // The agency's agency_timezone, which scheduled stop times are relative to.
+    // Delays sent without a time are added to the schedule in this zone.
+    private ZoneId timezone = ZoneId.systemDefault();
+
+    public RealtimeFeed() {
+    }
+
+    public RealtimeFeed(String agency, String tripUpdatesUrl, String vehiclePositionsUrl,
+            Duration pollInterval, Duration timeout) {
+        this.agency = agency;
+        this.tripUpdatesUrl = tripUpdatesUrl;
+        this.vehiclePositionsUrl = vehiclePositionsUrl;
+        this.pollInterval = pollInterval;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Qualifies an id from this feed with the agency namespace.
+     */
+    public String namespaced(String id) {
+        return namespaced(agency, id);
+    }
+
+    public static String namespaced(String agency, String id) {
+        if (id == null || agency == null || agency.isEmpty()) {
+            return id;
+        }
+        return agency + ":" + id;
+    }
+
+    public String getAgency() {
+        return agency;
+    }
+
+    public void setAgency(String agency) {
+        this.agency = agency;
+    }
+
+    public String getTripUpdatesUrl() {
+        return tripUpdatesUrl;
+    }
+
+    public void setTripUpdatesUrl(String tripUpdatesUrl) {
+        this.tripUpdatesUrl = tripUpdatesUrl;
+    }
+
+    public String getVehiclePositionsUrl() {
+        return vehiclePositionsUrl;
+    }
+
+    public void setVehiclePositionsUrl(String vehiclePositionsUrl) {
+        this.vehiclePositionsUrl = vehiclePositionsUrl;
+    }
+
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollInterval(Duration pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    public Duration getMinPollInterval() {
+        return minPollInterval;
+    }
+
+    public void setMinPollInterval(Duration minPollInterval) {
+        this.minPollInterval = minPollInterval;
+    }
+
+    public Duration getMaxPollInterval() {
+        return maxPollInterval;
+    }
+
+    public void setMaxPollInterval(Duration maxPollInterval) {
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    public Duration getPollJitter() {
+        return pollJitter;
+    }
+
+    public void setPollJitter(Duration pollJitter) {
+        this.pollJitter = pollJitter;
+    }
+
+    public boolean isAdaptivePolling() {
+        return adaptivePolling;
+    }
+
+    public void setAdaptivePolling(boolean adaptivePolling) {
+        this.adaptivePolling = adaptivePolling;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public List<String> getStaticUrls() {
+        return staticUrls;
+    }
+
+    public void setStaticUrls(List<String> staticUrls) {
+        this.staticUrls = staticUrls;
+    }
+
+    public ZoneId getTimezone() {
+        return timezone;
+    }
+
+    public void setTimezone(ZoneId timezone) {
+        this.timezone = timezone;
+    }
+}
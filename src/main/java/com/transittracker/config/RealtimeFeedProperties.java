@@ -0,0 +1,24 @@
+package com.transittracker.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binds gtfs.realtime.feeds[n].* — a list of per-agency realtime feeds. Lists
+ * of structured entries can't be expressed with @Value, hence the separate
+ * properties class.
+ */
+@ConfigurationProperties(prefix = "gtfs.realtime")
+public class RealtimeFeedProperties {
+    private List<RealtimeFeed> feeds = new ArrayList<>();
+
+    public List<RealtimeFeed> getFeeds() {
+        return feeds;
+    }
+
+    public void setFeeds(List<RealtimeFeed> feeds) {
+        this.feeds = feeds;
+    }
+}
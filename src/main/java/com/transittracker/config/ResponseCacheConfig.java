@@ -0,0 +1,30 @@
+package com.transittracker.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+public class ResponseCacheConfig {
+
+    @Value("${transit.response-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${transit.response-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${transit.response-cache.max-size:32MB}")
+    private DataSize maxSize;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public DataSize getMaxSize() {
+        return maxSize;
+    }
+}
@@ -0,0 +1,41 @@
+package com.transittracker.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SubscriptionConfig {
+
+    /**
+     * How a subscriber that cannot keep up with the feed is handled.
+     */
+    public enum BackpressurePolicy {
+        // Keep only the newest undelivered event; older ones are conflated away
+        LATEST,
+        // Keep up to buffer-size events, dropping the oldest on overflow
+        BUFFER,
+        // Keep up to max-missed-ticks events, then terminate the subscription
+        DISCONNECT
+    }
+
+    @Value("${transit.subscriptions.backpressure-policy:LATEST}")
+    private BackpressurePolicy backpressurePolicy;
+
+    @Value("${transit.subscriptions.buffer-size:4}")
+    private int bufferSize;
+
+    @Value("${transit.subscriptions.max-missed-ticks:3}")
+    private int maxMissedTicks;
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxMissedTicks() {
+        return maxMissedTicks;
+    }
+}
@@ -0,0 +1,311 @@
+package com.transittracker.controller;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.transittracker.cache.ResponseCache;
+import com.transittracker.cache.ResponseCache.CachedResponse;
+import com.transittracker.config.ResponseCacheConfig;
+import com.transittracker.repository.GtfsStaticCatalog;
+import com.transittracker.repository.TransitRepository;
+import graphql.language.AstPrinter;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.parser.Parser;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+import org.springframework.web.util.WebUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Serves repeated GraphQL queries over HTTP from a cache of their serialized
+ * responses.
+ *
+ * <p>
+ * Between polls the realtime snapshot is immutable, and the static catalog
+ * only changes on a reload, so a query's response depends only on its
+ * document, operation name and variables until either version changes. The
+ * key uses the document reprinted in compact form, so formatting differences
+ * share an entry, and variables with sorted keys. It also includes the Accept
+ * header, which picks the media type GraphQL answers with. The cache is
+ * emptied as soon as a request sees a newer version.
+ *
+ * <p>
+ * Only queries whose root fields are all plain fields outside
+ * {@link #UNCACHEABLE_FIELDS} are cached, and only successful responses
+ * without errors. Spring GraphQL answers over HTTP asynchronously, so the
+ * response is captured when the async dispatch completes, as
+ * {@link org.springframework.web.filter.ShallowEtagHeaderFilter} does.
+ */
+@Component
+public class GraphQlResponseCacheFilter extends OncePerRequestFilter {
+
+    // Root fields whose results change without a new snapshot
+    private static final Set<String> UNCACHEABLE_FIELDS = Set.of("subscriberStats", "arrivals");
+
+    private static final String PENDING_ATTRIBUTE = GraphQlResponseCacheFilter.class.getName() + ".PENDING";
+
+    private final TransitRepository transitRepository;
+    private final GtfsStaticCatalog staticCatalog;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper canonicalMapper;
+    private final boolean enabled;
+    private final String graphQlPath;
+    private final ResponseCache cache;
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    public GraphQlResponseCacheFilter(TransitRepository transitRepository, GtfsStaticCatalog staticCatalog,
+            ObjectMapper objectMapper, ResponseCacheConfig config,
+            @Value("${spring.graphql.path:/graphql}") String graphQlPath) {
+        this.transitRepository = transitRepository;
+        this.staticCatalog = staticCatalog;
+        this.objectMapper = objectMapper;
+        this.canonicalMapper = objectMapper.copy().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+        this.enabled = config.isEnabled();
+        this.graphQlPath = graphQlPath;
+        this.cache = new ResponseCache(config.getMaxEntries(), config.getMaxSize().toBytes());
+    }
+
+    public ResponseCache getCache() {
+        return cache;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"POST".equals(request.getMethod())
+                || !graphQlPath.equals(urlPathHelper.getPathWithinApplication(request));
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (isAsyncDispatch(request)) {
+            filterChain.doFilter(request, response);
+            if (!isAsyncStarted(request)) {
+                storeResponse(request, response);
+            }
+            return;
+        }
+
+        // The body is read here to build the key, so GraphQL gets a replay of it
+        byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+        HttpServletRequest replay = new CachedBodyRequest(request, body);
+        String key = cacheKey(body, request);
+        if (key == null) {
+            filterChain.doFilter(replay, response);
+            return;
+        }
+
+        // Read before executing, so a response is never stored under a version
+        // newer than the data it was built from
+        long snapshotVersion = transitRepository.getSnapshot().getVersion();
+        long catalogVersion = staticCatalog.getVersion();
+        CachedResponse cached = cache.get(key, snapshotVersion, catalogVersion);
+        if (cached != null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(cached.getContentType());
+            response.setContentLength(cached.getBody().length);
+            response.getOutputStream().write(cached.getBody());
+            return;
+        }
+
+        request.setAttribute(PENDING_ATTRIBUTE, new Pending(key, snapshotVersion, catalogVersion));
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        filterChain.doFilter(replay, wrapper);
+        if (!isAsyncStarted(replay)) {
+            storeResponse(replay, wrapper);
+        }
+    }
+
+    private void storeResponse(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ContentCachingResponseWrapper wrapper = WebUtils.getNativeResponse(response,
+                ContentCachingResponseWrapper.class);
+        if (wrapper == null)
+            return;
+
+        Pending pending = (Pending) request.getAttribute(PENDING_ATTRIBUTE);
+        request.removeAttribute(PENDING_ATTRIBUTE);
+        byte[] body = wrapper.getContentAsByteArray();
+        if (pending != null && wrapper.getStatus() == HttpServletResponse.SC_OK && body.length > 0
+                && !hasErrors(body)) {
+            cache.put(pending.key, pending.snapshotVersion, pending.catalogVersion,
+                    new CachedResponse(wrapper.getContentType(), body));
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    /**
+     * The cache key for a request body, or null if the request should not be
+     * cached (including anything unparseable, which GraphQL will report).
+     */
+    private String cacheKey(byte[] body, HttpServletRequest httpRequest) {
+        try {
+            JsonNode request = objectMapper.readTree(body);
+            JsonNode query = request == null ? null : request.get("query");
+            if (query == null || !query.isTextual())
+                return null;
+            JsonNode operationNameNode = request.get("operationName");
+            String operationName = operationNameNode != null && operationNameNode.isTextual()
+                    ? operationNameNode.asText()
+                    : null;
+
+            Document document = Parser.parse(query.asText());
+            OperationDefinition operation = selectOperation(document, operationName);
+            if (operation == null || operation.getOperation() != OperationDefinition.Operation.QUERY
+                    || !cacheable(operation.getSelectionSet().getSelections())) {
+                return null;
+            }
+
+            JsonNode variables = request.get("variables");
+            String canonicalVariables = variables == null || variables.isNull()
+                    ? ""
+                    : canonicalMapper.writeValueAsString(canonicalMapper.treeToValue(variables, Object.class));
+            String accept = String.join(",", Collections.list(httpRequest.getHeaders(HttpHeaders.ACCEPT)));
+            return AstPrinter.printAstCompact(document) + '\u0000'
+                    + (operationName != null ? operationName : "") + '\u0000'
+                    + canonicalVariables + '\u0000'
+                    + accept;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static OperationDefinition selectOperation(Document document, String operationName) {
+        List<OperationDefinition> operations = document.getDefinitionsOfType(OperationDefinition.class);
+        if (operationName == null) {
+            return operations.size() == 1 ? operations.get(0) : null;
+        }
+        return operations.stream()
+                .filter(operation -> operationName.equals(operation.getName()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static boolean cacheable(List<Selection> selections) {
+        // Fragments at the root could hide an uncacheable field; don't bother
+        // resolving them
+        return selections.stream()
+                .allMatch(selection -> selection instanceof Field field && !UNCACHEABLE_FIELDS.contains(field.getName()));
+    }
+
+    /**
+     * graphql-java writes "errors" ahead of "data", so only the first field of
+     * the response needs to be checked.
+     */
+    private boolean hasErrors(byte[] body) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            return parser.nextToken() != JsonToken.START_OBJECT
+                    || parser.nextToken() != JsonToken.FIELD_NAME
+                    || "errors".equals(parser.currentName());
+        }
+    }
+
+    private static final class Pending {
+        final String key;
+        final long snapshotVersion;
+        final long catalogVersion;
+
+        Pending(String key, long snapshotVersion, long catalogVersion) {
+            this.key = key;
+            this.snapshotVersion = snapshotVersion;
+            this.catalogVersion = catalogVersion;
+        }
+    }
+
+    /**
+     * Replays a request body that has already been read.
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    // The whole body is already in memory
+                    try {
+                        listener.onDataAvailable();
+                        listener.onAllDataRead();
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
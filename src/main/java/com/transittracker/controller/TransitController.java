@@ -2,12 +2,15 @@ package com.transittracker.controller;
 
 import com.transittracker.entity.GtfsRoute;
 import com.transittracker.entity.GtfsStop;
+import com.transittracker.model.Arrival;
+import com.transittracker.model.SubscriberStats;
 import com.transittracker.model.Trip;
+import com.transittracker.model.TripDeltaEvent;
 import com.transittracker.model.TripUpdateEvent;
 import com.transittracker.model.VehiclePosition;
-import com.transittracker.repository.GtfsRouteRepository;
-import com.transittracker.repository.GtfsStopRepository;
+import com.transittracker.repository.GtfsStaticCatalog;
 import com.transittracker.repository.TransitRepository;
+import com.transittracker.repository.TransitSnapshot;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
 import org.springframework.graphql.data.method.annotation.SubscriptionMapping;
@@ -16,66 +19,103 @@ import reactor.core.publisher.Flux;
 
 import java.util.List;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @Controller
 public class TransitController {
 
+    private static final int DEFAULT_ARRIVALS_LIMIT = 10;
+    private static final double DEFAULT_STOPS_NEAR_RADIUS_METERS = 500;
+    private static final int DEFAULT_STOPS_NEAR_LIMIT = 20;
+
     private final TransitRepository transitRepository;
-    private final GtfsRouteRepository routeRepository;
-    private final GtfsStopRepository stopRepository;
+    private final GtfsStaticCatalog staticCatalog;
 
-    public TransitController(TransitRepository transitRepository,
-            GtfsRouteRepository routeRepository,
-            GtfsStopRepository stopRepository) {
+    public TransitController(TransitRepository transitRepository, GtfsStaticCatalog staticCatalog) {
         this.transitRepository = transitRepository;
-        this.routeRepository = routeRepository;
-        this.stopRepository = stopRepository;
+        this.staticCatalog = staticCatalog;
     }
 
     @QueryMapping
     public List<Trip> trips(@Argument String routeId, @Argument String vehicleId) {
-        return transitRepository.getAllTrips().stream()
-                .filter(trip -> routeId == null || routeId.equals(trip.getRouteId()))
-                .filter(trip -> vehicleId == null
-                        || (trip.getVehicle() != null && vehicleId.equals(trip.getVehicle().getId())))
-                .collect(Collectors.toList());
+        // Read the snapshot once so both lookups see the same poll
+        TransitSnapshot snapshot = transitRepository.getSnapshot();
+
+        if (vehicleId != null) {
+            List<Trip> vehicleTrips = snapshot.getTripsByVehicleId(vehicleId);
+            if (routeId == null) {
+                return vehicleTrips;
+            }
+            return vehicleTrips.stream()
+                    .filter(trip -> routeId.equals(trip.getRouteId()))
+                    .collect(Collectors.toList());
+        }
+
+        return routeId != null ? snapshot.getTripsByRouteId(routeId) : snapshot.getTrips();
     }
 
     @QueryMapping
     public List<VehiclePosition> vehiclePositions(@Argument String routeId) {
-        return transitRepository.getAllVehiclePositions().stream()
-                .filter(pos -> routeId == null || routeId.equals(pos.getRouteId()))
-                .collect(Collectors.toList());
+        TransitSnapshot snapshot = transitRepository.getSnapshot();
+        return routeId != null ? snapshot.getVehiclePositionsByRouteId(routeId) : snapshot.getVehiclePositions();
+    }
+
+    @QueryMapping
+    public List<VehiclePosition> vehiclesNear(@Argument double lat, @Argument double lon,
+            @Argument double radiusMeters) {
+        return transitRepository.getSnapshot().getVehiclePositionsNear(lat, lon, radiusMeters);
+    }
+
+    @QueryMapping
+    public List<VehiclePosition> vehiclesInBox(@Argument double minLat, @Argument double minLon,
+            @Argument double maxLat, @Argument double maxLon) {
+        return transitRepository.getSnapshot().getVehiclePositionsInBox(minLat, minLon, maxLat, maxLon);
+    }
+
+    @QueryMapping
+    public List<Arrival> arrivals(@Argument String stopId, @Argument Integer limit, @Argument Integer withinSeconds) {
+        long now = System.currentTimeMillis() / 1000;
+        long to = withinSeconds != null ? now + withinSeconds : Long.MAX_VALUE;
+        return transitRepository.getSnapshot().getArrivals(stopId, now, to,
+                limit != null ? limit : DEFAULT_ARRIVALS_LIMIT);
     }
 
     @QueryMapping
     public List<GtfsRoute> routes() {
-        return StreamSupport.stream(routeRepository.findAll().spliterator(), false)
-                .collect(Collectors.toList());
+        return staticCatalog.routes();
     }
 
     @QueryMapping
     public List<GtfsStop> stops(@Argument String routeId) {
-        // TODO: If routeId filtering is needed, this would require a join through
-        // stop_times + trips.
-        // For now, return all stops.
-        return StreamSupport.stream(stopRepository.findAll().spliterator(), false)
-                .collect(Collectors.toList());
+        return routeId != null ? staticCatalog.stopsForRoute(routeId) : staticCatalog.stops();
+    }
+
+    @QueryMapping
+    public List<GtfsStop> stopsNear(@Argument double lat, @Argument double lon, @Argument Double radiusMeters,
+            @Argument Integer limit) {
+        // The schema defaults don't apply when a client sends an explicit null
+        return staticCatalog.stopsNear(lat, lon,
+                radiusMeters != null ? radiusMeters : DEFAULT_STOPS_NEAR_RADIUS_METERS,
+                limit != null ? limit : DEFAULT_STOPS_NEAR_LIMIT);
+    }
+
+    @QueryMapping
+    public List<GtfsStop> stopsInBox(@Argument double minLat, @Argument double minLon,
+            @Argument double maxLat, @Argument double maxLon) {
+        return staticCatalog.stopsInBox(minLat, minLon, maxLat, maxLon);
+    }
+
+    @QueryMapping
+    public List<SubscriberStats> subscriberStats() {
+        return transitRepository.getSubscriberStats();
     }
 
     @SubscriptionMapping
     public Flux<TripUpdateEvent> feedUpdates(@Argument String routeId) {
-        return transitRepository.getTripUpdates()
-                .map(event -> {
-                    if (routeId == null) {
-                        return event;
-                    } else {
-                        List<Trip> filtered = event.getTrips().stream()
-                                .filter(trip -> routeId.equals(trip.getRouteId()))
-                                .collect(Collectors.toList());
-                        return new TripUpdateEvent(filtered, event.getTimestamp());
-                    }
-                });
+        return transitRepository.getTripUpdates(routeId);
+    }
+
+    @SubscriptionMapping
+    public Flux<TripDeltaEvent> feedDeltas(@Argument String routeId) {
+        return transitRepository.getTripDeltas(routeId);
     }
 }
@@ -0,0 +1,113 @@
+package com.transittracker.model;
+
+/**
+ * One trip's upcoming stop at a given stop, as listed on a departure board.
+ */
+public class Arrival {
+    private String tripId;
+    private String routeId;
+    private String routeName;
+    private String tripHeadsign;
+    private Vehicle vehicle;
+    private int stopSequence;
+    private String stopId;
+    private String stopName;
+    private StopTimeEvent arrival;
+    private StopTimeEvent departure;
+
+    public Arrival() {
+    }
+
+    public Arrival(Trip trip, StopTimeUpdate update) {
+        this.tripId = trip.getTripId();
+        this.routeId = trip.getRouteId();
+        this.routeName = trip.getRouteName();
+        this.tripHeadsign = trip.getTripHeadsign();
+        this.vehicle = trip.getVehicle();
+        this.stopSequence = update.getStopSequence();
+        this.stopId = update.getStopId();
+        this.stopName = update.getStopName();
+        this.arrival = update.getArrival();
+        this.departure = update.getDeparture();
+    }
+
+    public String getTripId() {
+        return tripId;
+    }
+
+    public void setTripId(String tripId) {
+        this.tripId = tripId;
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    public void setRouteId(String routeId) {
+        this.routeId = routeId;
+    }
+
+    public String getRouteName() {
+        return routeName;
+    }
+
+    public void setRouteName(String routeName) {
+        this.routeName = routeName;
+    }
+
+    public String getTripHeadsign() {
+        return tripHeadsign;
+    }
+
+    public void setTripHeadsign(String tripHeadsign) {
+        this.tripHeadsign = tripHeadsign;
+    }
+
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    public void setVehicle(Vehicle vehicle) {
+        this.vehicle = vehicle;
+    }
+
+    public int getStopSequence() {
+        return stopSequence;
+    }
+
+    public void setStopSequence(int stopSequence) {
+        this.stopSequence = stopSequence;
+    }
+
+    public String getStopId() {
+        return stopId;
+    }
+
+    public void setStopId(String stopId) {
+        this.stopId = stopId;
+    }
+
+    public String getStopName() {
+        return stopName;
+    }
+
+    public void setStopName(String stopName) {
+        this.stopName = stopName;
+    }
+
+    public StopTimeEvent getArrival() {
+        return arrival;
+    }
+
+    public void setArrival(StopTimeEvent arrival) {
+        this.arrival = arrival;
+    }
+
+    public StopTimeEvent getDeparture() {
+        return departure;
+    }
+
+    public void setDeparture(StopTimeEvent departure) {
+        this.departure = departure;
+    }
+}
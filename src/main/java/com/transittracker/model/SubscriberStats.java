@@ -0,0 +1,73 @@
+package com.transittracker.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SubscriberStats {
+    private final long subscriberId;
+    private final String topic;
+    private final String policy;
+    private final long connectedAt;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+
+    public SubscriberStats(long subscriberId, String topic, String policy, long connectedAt) {
+        this.subscriberId = subscriberId;
+        this.topic = topic;
+        this.policy = policy;
+        this.connectedAt = connectedAt;
+    }
+
+    public void recordReceived() {
+        received.incrementAndGet();
+    }
+
+    public void recordDelivered() {
+        delivered.incrementAndGet();
+    }
+
+    public void recordDropped() {
+        dropped.incrementAndGet();
+    }
+
+    public void recordConflated() {
+        conflated.incrementAndGet();
+    }
+
+    public long getSubscriberId() {
+        return subscriberId;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Events replaced by a newer one before the subscriber asked for them. Only
+     * the LATEST policy conflates.
+     */
+    public long getConflated() {
+        return conflated.get();
+    }
+}
@@ -0,0 +1,79 @@
+package com.transittracker.model;
+
+import java.util.List;
+
+public class TripDeltaEvent {
+    // True for the full snapshot sent when a subscriber connects; every trip is
+    // then listed in "added" and the client should replace its local state
+    private boolean snapshot;
+    private long version;
+    private long timestamp;
+    private List<Trip> added;
+    private List<Trip> changed;
+    private List<Trip> removed;
+
+    public TripDeltaEvent() {
+    }
+
+    public TripDeltaEvent(boolean snapshot, long version, long timestamp,
+            List<Trip> added, List<Trip> changed, List<Trip> removed) {
+        this.snapshot = snapshot;
+        this.version = version;
+        this.timestamp = timestamp;
+        this.added = added;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public List<Trip> getAdded() {
+        return added;
+    }
+
+    public void setAdded(List<Trip> added) {
+        this.added = added;
+    }
+
+    public List<Trip> getChanged() {
+        return changed;
+    }
+
+    public void setChanged(List<Trip> changed) {
+        this.changed = changed;
+    }
+
+    public List<Trip> getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(List<Trip> removed) {
+        this.removed = removed;
+    }
+}
@@ -0,0 +1,215 @@
+package com.transittracker.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Immutable uniform grid over latitude/longitude for viewport and radius
+ * lookups.
+ *
+ * <p>
+ * Items are bucketed into square cells of a fixed size in degrees and stored
+ * sorted by cell (row, then column), with each cell's items contiguous. A box
+ * query binary searches the first cell of each row it spans and reads cells
+ * until the row leaves the box, so its cost is the rows spanned plus the items
+ * in the touched cells rather than the whole list. Items without coordinates
+ * are left out. Boxes crossing the antimeridian are not supported.
+ */
+public final class GeoGrid<T> {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180;
+
+    private final double cellDegrees;
+
+    // Distinct occupied cells in order; cell i's items are
+    // [cellStart[i], cellStart[i + 1])
+    private final long[] cellKeys;
+    private final int[] cellStart;
+    private final int minRow;
+    private final int maxRow;
+
+    private final Object[] items;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    public GeoGrid(List<T> items, Function<T, Double> latitude, Function<T, Double> longitude,
+            double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+
+        int count = 0;
+        long[] keys = new long[items.size()];
+        double[] lats = new double[items.size()];
+        double[] lons = new double[items.size()];
+        int[] source = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            Double lat = latitude.apply(items.get(i));
+            Double lon = longitude.apply(items.get(i));
+            if (lat == null || lon == null || lat.isNaN() || lon.isNaN())
+                continue;
+            keys[count] = cellKey(row(lat), column(lon));
+            lats[count] = lat;
+            lons[count] = lon;
+            source[count] = i;
+            count++;
+        }
+
+        // Sort positions by cell; ties keep list order
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        this.items = new Object[count];
+        this.latitudes = new double[count];
+        this.longitudes = new double[count];
+        long[] distinct = new long[count];
+        int[] starts = new int[count + 1];
+        int cells = 0;
+        for (int i = 0; i < count; i++) {
+            int from = order[i];
+            this.items[i] = items.get(source[from]);
+            this.latitudes[i] = lats[from];
+            this.longitudes[i] = lons[from];
+            if (cells == 0 || distinct[cells - 1] != keys[from]) {
+                distinct[cells] = keys[from];
+                starts[cells] = i;
+                cells++;
+            }
+        }
+        starts[cells] = count;
+        this.cellKeys = Arrays.copyOf(distinct, cells);
+        this.cellStart = Arrays.copyOf(starts, cells + 1);
+        this.minRow = cells == 0 ? 0 : (int) (cellKeys[0] >> 32);
+        this.maxRow = cells == 0 ? -1 : (int) (cellKeys[cells - 1] >> 32);
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * Items inside the box, edges included, in no particular order.
+     */
+    public List<T> inBox(double minLat, double minLon, double maxLat, double maxLon) {
+        if (!(minLat <= maxLat && minLon <= maxLon)) {
+            return Collections.emptyList();
+        }
+
+        List<T> found = new ArrayList<>();
+        int[] ranges = cellRanges(minLat, minLon, maxLat, maxLon);
+        for (int r = 1; r < ranges[0]; r += 2) {
+            for (int i = ranges[r]; i < ranges[r + 1]; i++) {
+                if (latitudes[i] >= minLat && latitudes[i] <= maxLat
+                        && longitudes[i] >= minLon && longitudes[i] <= maxLon) {
+                    found.add(item(i));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Items within the radius of a point, nearest first.
+     */
+    public List<T> near(double lat, double lon, double radiusMeters) {
+        if (!(radiusMeters >= 0)) {
+            return Collections.emptyList();
+        }
+
+        double latDelta = radiusMeters / METERS_PER_DEGREE;
+        // Longitude degrees shrink towards the poles; near them, search every column
+        double cos = Math.cos(Math.toRadians(lat));
+        double lonDelta = cos < 1e-6 ? 360 : Math.min(360, latDelta / cos);
+
+        List<Integer> hits = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        int[] ranges = cellRanges(lat - latDelta, lon - lonDelta, lat + latDelta, lon + lonDelta);
+        for (int r = 1; r < ranges[0]; r += 2) {
+            for (int i = ranges[r]; i < ranges[r + 1]; i++) {
+                double distance = distanceMeters(lat, lon, latitudes[i], longitudes[i]);
+                if (distance <= radiusMeters) {
+                    hits.add(i);
+                    distances.add(distance);
+                }
+            }
+        }
+
+        Integer[] order = new Integer[hits.size()];
+        for (int h = 0; h < order.length; h++) {
+            order[h] = h;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(distances.get(a), distances.get(b)));
+        List<T> found = new ArrayList<>(order.length);
+        for (int h : order) {
+            found.add(item(hits.get(h)));
+        }
+        return found;
+    }
+
+    /**
+     * Great-circle (haversine) distance between two points in meters.
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                        * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Position ranges of the occupied cells overlapping the box, as
+     * {@code [length, start, end, start, end, ...]} where length is the index
+     * one past the last used slot.
+     */
+    private int[] cellRanges(double minLat, double minLon, double maxLat, double maxLon) {
+        int[] ranges = new int[17];
+        int length = 1;
+        int firstColumn = column(minLon);
+        int lastColumn = column(maxLon);
+        int lastRow = Math.min(row(maxLat), maxRow);
+        for (int row = Math.max(row(minLat), minRow); row <= lastRow; row++) {
+            int cell = Arrays.binarySearch(cellKeys, cellKey(row, firstColumn));
+            cell = cell < 0 ? -cell - 1 : cell;
+            int lastCell = cell;
+            long lastKey = cellKey(row, lastColumn);
+            while (lastCell < cellKeys.length && cellKeys[lastCell] <= lastKey) {
+                lastCell++;
+            }
+            if (lastCell > cell) {
+                // Cells in a row are adjacent in storage, so a row is one range
+                if (length + 2 > ranges.length) {
+                    ranges = Arrays.copyOf(ranges, ranges.length * 2 + 1);
+                }
+                ranges[length++] = cellStart[cell];
+                ranges[length++] = cellStart[lastCell];
+            }
+        }
+        ranges[0] = length;
+        return ranges;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(int i) {
+        return (T) items[i];
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor(lat / cellDegrees);
+    }
+
+    private int column(double lon) {
+        return (int) Math.floor(lon / cellDegrees);
+    }
+
+    // Ordered by row, then column, for negative values too
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) + ((long) column - Integer.MIN_VALUE);
+    }
+}
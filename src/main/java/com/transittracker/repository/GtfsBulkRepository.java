@@ -0,0 +1,83 @@
+package com.transittracker.repository;
+
+import com.transittracker.entity.GtfsRoute;
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.entity.GtfsTrip;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Bulk writes for static GTFS entities. Going through JPA's saveAll issues a
+ * SELECT per entity (the ids are assigned, so Hibernate has to check whether
+ * each one exists) followed by one INSERT each. Here every batch is sent as a
+ * single JDBC batch of H2 MERGE statements, which insert or replace by primary
+ * key without a prior read. Nothing is attached to a persistence context.
+ */
+@Repository
+public class GtfsBulkRepository {
+
+    private static final String MERGE_ROUTE = "MERGE INTO routes (route_id, route_short_name, route_long_name, route_type) "
+            + "KEY (route_id) VALUES (?, ?, ?, ?)";
+    private static final String MERGE_STOP = "MERGE INTO stops (stop_id, stop_name, stop_lat, stop_lon) "
+            + "KEY (stop_id) VALUES (?, ?, ?, ?)";
+    private static final String MERGE_TRIP = "MERGE INTO trips (trip_id, route_id, trip_headsign, direction_id) "
+            + "KEY (trip_id) VALUES (?, ?, ?, ?)";
+
+    private static final String DELETE_ROUTE = "DELETE FROM routes WHERE route_id = ?";
+    private static final String DELETE_STOP = "DELETE FROM stops WHERE stop_id = ?";
+    private static final String DELETE_TRIP = "DELETE FROM trips WHERE trip_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public GtfsBulkRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void mergeRoutes(List<GtfsRoute> routes) {
+        jdbcTemplate.batchUpdate(MERGE_ROUTE, routes, routes.size(), (ps, route) -> {
+            ps.setString(1, route.getRouteId());
+            ps.setString(2, route.getRouteShortName());
+            ps.setString(3, route.getRouteLongName());
+            ps.setObject(4, route.getRouteType(), Types.INTEGER);
+        });
+    }
+
+    public void mergeStops(List<GtfsStop> stops) {
+        jdbcTemplate.batchUpdate(MERGE_STOP, stops, stops.size(), (ps, stop) -> {
+            ps.setString(1, stop.getStopId());
+            ps.setString(2, stop.getStopName());
+            ps.setObject(3, stop.getStopLat(), Types.DOUBLE);
+            ps.setObject(4, stop.getStopLon(), Types.DOUBLE);
+        });
+    }
+
+    public void mergeTrips(List<GtfsTrip> trips) {
+        jdbcTemplate.batchUpdate(MERGE_TRIP, trips, trips.size(), (ps, trip) -> {
+            ps.setString(1, trip.getTripId());
+            ps.setString(2, trip.getRouteId());
+            ps.setString(3, trip.getTripHeadsign());
+            ps.setObject(4, trip.getDirectionId(), Types.INTEGER);
+        });
+    }
+
+    public void deleteRoutes(List<String> routeIds) {
+        deleteByIds(DELETE_ROUTE, routeIds);
+    }
+
+    public void deleteStops(List<String> stopIds) {
+        deleteByIds(DELETE_STOP, stopIds);
+    }
+
+    public void deleteTrips(List<String> tripIds) {
+        deleteByIds(DELETE_TRIP, tripIds);
+    }
+
+    private void deleteByIds(String sql, List<String> ids) {
+        if (ids.isEmpty())
+            return;
+        jdbcTemplate.batchUpdate(sql, ids, ids.size(), (ps, id) -> ps.setString(1, id));
+    }
+}
@@ -0,0 +1,246 @@
+package com.transittracker.repository;
+
+import com.transittracker.entity.GtfsRoute;
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.entity.GtfsTrip;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable in-memory copy of the static routes, stops and trips, so reads
+ * never go through JPA. The database is read once per static load by
+ * {@link #refresh}; the new catalog is built completely and published with a
+ * single volatile write.
+ *
+ * <p>
+ * Entities are held in arrays with id to index maps. Trips are ordered by
+ * route, so a route's trips are one contiguous range and each trip knows its
+ * route's index. Stops also get a spatial grid, and each route the stops it
+ * serves in travel order, taken from the feeds' stop times.
+ */
+@Repository
+public class GtfsStaticCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(GtfsStaticCatalog.class);
+
+    // About 1.1 km north-south; a typical city has a handful of stops per cell
+    private static final double GRID_CELL_DEGREES = 0.01;
+
+    private final GtfsRouteRepository routeRepository;
+    private final GtfsStopRepository stopRepository;
+    private final GtfsTripRepository tripRepository;
+
+    private volatile Catalog catalog = Catalog.EMPTY;
+
+    public GtfsStaticCatalog(GtfsRouteRepository routeRepository, GtfsStopRepository stopRepository,
+            GtfsTripRepository tripRepository) {
+        this.routeRepository = routeRepository;
+        this.stopRepository = stopRepository;
+        this.tripRepository = tripRepository;
+    }
+
+    /**
+     * Re-reads the static tables and swaps in a new catalog, taking route stop
+     * lists from the stop times of every loaded feed.
+     */
+    public void refresh(Collection<StopTimesStore> stopTimes) {
+        List<GtfsRoute> routes = new ArrayList<>();
+        routeRepository.findAll().forEach(routes::add);
+        List<GtfsStop> stops = new ArrayList<>();
+        stopRepository.findAll().forEach(stops::add);
+        List<GtfsTrip> trips = new ArrayList<>();
+        tripRepository.findAll().forEach(trips::add);
+
+        Catalog refreshed = new Catalog(catalog.version + 1, routes, stops, trips, stopTimes);
+        catalog = refreshed;
+        logger.info("Cataloged {} routes, {} stops ({} with coordinates), {} trips and {} stop times",
+                refreshed.routes.length, refreshed.stops.length, refreshed.stopGrid.size(), refreshed.trips.length,
+                stopTimes.stream().mapToInt(StopTimesStore::size).sum());
+    }
+
+    /**
+     * Incremented on every refresh.
+     */
+    public long getVersion() {
+        return catalog.version;
+    }
+
+    public List<GtfsRoute> routes() {
+        return catalog.routeList;
+    }
+
+    public List<GtfsStop> stops() {
+        return catalog.stopList;
+    }
+
+    /**
+     * Every trip, grouped by route.
+     */
+    public List<GtfsTrip> trips() {
+        return catalog.tripList;
+    }
+
+    public GtfsRoute route(String routeId) {
+        Catalog current = catalog;
+        Integer index = current.routeIndex.get(routeId);
+        return index == null ? null : current.routes[index];
+    }
+
+    public GtfsStop stop(String stopId) {
+        Catalog current = catalog;
+        Integer index = current.stopIndex.get(stopId);
+        return index == null ? null : current.stops[index];
+    }
+
+    public GtfsTrip trip(String tripId) {
+        Catalog current = catalog;
+        Integer index = current.tripIndex.get(tripId);
+        return index == null ? null : current.trips[index];
+    }
+
+    /**
+     * The route a trip belongs to, or null if either is unknown.
+     */
+    public GtfsRoute routeForTrip(String tripId) {
+        Catalog current = catalog;
+        Integer index = current.tripIndex.get(tripId);
+        if (index == null)
+            return null;
+        int route = current.routeOfTrip[index];
+        return route < 0 ? null : current.routes[route];
+    }
+
+    public List<GtfsTrip> tripsForRoute(String routeId) {
+        Catalog current = catalog;
+        Integer index = current.routeIndex.get(routeId);
+        if (index == null)
+            return Collections.emptyList();
+        return current.tripList.subList(current.routeTripStart[index], current.routeTripStart[index + 1]);
+    }
+
+    /**
+     * Stops served by a route in travel order, or an empty list.
+     */
+    public List<GtfsStop> stopsForRoute(String routeId) {
+        return catalog.stopsByRouteId.getOrDefault(routeId, Collections.emptyList());
+    }
+
+    /**
+     * Up to {@code limit} stops within the radius of a point, nearest first.
+     */
+    public List<GtfsStop> stopsNear(double lat, double lon, double radiusMeters, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<GtfsStop> found = catalog.stopGrid.near(lat, lon, radiusMeters);
+        return found.size() > limit ? found.subList(0, limit) : found;
+    }
+
+    public List<GtfsStop> stopsInBox(double minLat, double minLon, double maxLat, double maxLon) {
+        return catalog.stopGrid.inBox(minLat, minLon, maxLat, maxLon);
+    }
+
+    /**
+     * The scheduled stop times of every loaded feed.
+     */
+    public List<StopTimesStore> stopTimes() {
+        return catalog.stopTimes;
+    }
+
+    private static final class Catalog {
+
+        static final Catalog EMPTY = new Catalog(0, Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList());
+
+        final long version;
+        final GtfsRoute[] routes;
+        final GtfsStop[] stops;
+        final GtfsTrip[] trips;
+        final List<GtfsRoute> routeList;
+        final List<GtfsStop> stopList;
+        final List<GtfsTrip> tripList;
+
+        final Map<String, Integer> routeIndex = new HashMap<>();
+        final Map<String, Integer> stopIndex = new HashMap<>();
+        final Map<String, Integer> tripIndex = new HashMap<>();
+
+        // Route index of each trip, -1 if unknown; trips of routes[r] are
+        // [routeTripStart[r], routeTripStart[r + 1]), and trips with an unknown
+        // route come last
+        final int[] routeOfTrip;
+        final int[] routeTripStart;
+
+        final GeoGrid<GtfsStop> stopGrid;
+        final Map<String, List<GtfsStop>> stopsByRouteId = new HashMap<>();
+        final List<StopTimesStore> stopTimes;
+
+        Catalog(long version, List<GtfsRoute> routes, List<GtfsStop> stops, List<GtfsTrip> trips,
+                Collection<StopTimesStore> stopTimes) {
+            this.version = version;
+            this.routes = routes.toArray(new GtfsRoute[0]);
+            this.stops = stops.toArray(new GtfsStop[0]);
+            for (int r = 0; r < this.routes.length; r++) {
+                routeIndex.put(this.routes[r].getRouteId(), r);
+            }
+            for (int s = 0; s < this.stops.length; s++) {
+                stopIndex.put(this.stops[s].getStopId(), s);
+            }
+
+            // Counting sort of the trips by route, keeping their order within a route
+            int[] routeOf = new int[trips.size()];
+            routeTripStart = new int[this.routes.length + 2];
+            for (int t = 0; t < trips.size(); t++) {
+                Integer route = routeIndex.get(trips.get(t).getRouteId());
+                routeOf[t] = route == null ? this.routes.length : route;
+                routeTripStart[routeOf[t] + 1]++;
+            }
+            for (int r = 0; r <= this.routes.length; r++) {
+                routeTripStart[r + 1] += routeTripStart[r];
+            }
+            this.trips = new GtfsTrip[trips.size()];
+            this.routeOfTrip = new int[trips.size()];
+            int[] next = Arrays.copyOf(routeTripStart, this.routes.length + 1);
+            for (int t = 0; t < trips.size(); t++) {
+                int position = next[routeOf[t]]++;
+                this.trips[position] = trips.get(t);
+                this.routeOfTrip[position] = routeOf[t] == this.routes.length ? -1 : routeOf[t];
+            }
+            for (int t = 0; t < this.trips.length; t++) {
+                tripIndex.put(this.trips[t].getTripId(), t);
+            }
+
+            this.routeList = Collections.unmodifiableList(Arrays.asList(this.routes));
+            this.stopList = Collections.unmodifiableList(Arrays.asList(this.stops));
+            this.tripList = Collections.unmodifiableList(Arrays.asList(this.trips));
+
+            this.stopGrid = new GeoGrid<>(this.stopList, GtfsStop::getStopLat, GtfsStop::getStopLon,
+                    GRID_CELL_DEGREES);
+            this.stopTimes = List.copyOf(stopTimes);
+
+            // A route in several feeds gets the stops of each
+            Map<String, Set<GtfsStop>> routeStops = new HashMap<>();
+            for (StopTimesStore store : this.stopTimes) {
+                for (String routeId : store.routeIds()) {
+                    Set<GtfsStop> ordered = routeStops.computeIfAbsent(routeId, k -> new LinkedHashSet<>());
+                    for (String stopId : store.stopIdsForRoute(routeId)) {
+                        Integer stop = stopIndex.get(stopId);
+                        if (stop != null)
+                            ordered.add(this.stops[stop]);
+                    }
+                }
+            }
+            routeStops.forEach((routeId, ordered) -> stopsByRouteId.put(routeId, List.copyOf(ordered)));
+        }
+    }
+}
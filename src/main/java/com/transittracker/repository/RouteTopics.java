@@ -0,0 +1,62 @@
+package com.transittracker.repository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-route multicast topics. A route's sink is created when its first
+ * subscriber arrives and evicted when the last one leaves, so publishers only
+ * pay for routes somebody is actually watching.
+ */
+final class RouteTopics<T> {
+
+    private final ConcurrentHashMap<String, Topic<T>> topics = new ConcurrentHashMap<>();
+
+    Flux<T> subscribe(String routeId) {
+        return Flux.defer(() -> {
+            // Subscriber counts are only touched inside compute(), which holds the
+            // map's lock for that key, so eviction cannot race a new subscriber
+            Topic<T> topic = topics.compute(routeId, (key, existing) -> {
+                Topic<T> t = existing != null ? existing : new Topic<>();
+                t.subscribers++;
+                return t;
+            });
+            return topic.sink.asFlux().doFinally(signal -> release(routeId, topic));
+        });
+    }
+
+    /**
+     * Route ids with at least one subscriber. The returned view is live; routes
+     * subscribed to mid-iteration may or may not be included.
+     */
+    Set<String> activeRouteIds() {
+        return topics.keySet();
+    }
+
+    void publish(String routeId, T event) {
+        Topic<T> topic = topics.get(routeId);
+        if (topic != null) {
+            topic.sink.tryEmitNext(event);
+        }
+    }
+
+    private void release(String routeId, Topic<T> topic) {
+        topics.computeIfPresent(routeId, (key, current) -> {
+            if (current != topic) {
+                return current;
+            }
+            return --current.subscribers == 0 ? null : current;
+        });
+    }
+
+    private static final class Topic<T> {
+        // Direct sinks keep no shared buffer and survive the gap between the last
+        // subscriber leaving and the topic being evicted; per-subscriber
+        // buffering is left to SubscriberBackpressure
+        private final Sinks.Many<T> sink = Sinks.many().multicast().directBestEffort();
+        private int subscribers;
+    }
+}
@@ -0,0 +1,265 @@
+package com.transittracker.repository;
+
+import com.transittracker.model.StopTimeEvent;
+import com.transittracker.model.StopTimeUpdate;
+import com.transittracker.model.Trip;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented copy of every stop time update in a trip snapshot, for
+ * stop-centric questions such as "next arrivals at stop X".
+ *
+ * <p>
+ * Each row is one stop time update, held in parallel primitive arrays and
+ * sorted by stop and then by time (the arrival, or the departure if there is
+ * no arrival), so the rows of one stop are a contiguous range that can be
+ * binary searched by time. Missing times are {@link #NO_TIME} and sort last
+ * within their stop; missing delays are {@link #NO_DELAY}.
+ *
+ * <p>
+ * Immutable once built.
+ */
+public final class StopTimeColumns {
+
+    public static final long NO_TIME = Long.MIN_VALUE;
+    public static final int NO_DELAY = Integer.MIN_VALUE;
+
+    // Sort keys pack the time above the row's position within its stop
+    private static final int POSITION_BITS = 24;
+    private static final long MAX_SORT_TIME = (1L << (63 - POSITION_BITS)) - 1;
+
+    private final List<Trip> trips;
+
+    // Distinct stop ids in sorted order; rows of stopIds[s] are
+    // [stopStart[s], stopStart[s + 1])
+    private final String[] stopIds;
+    private final int[] stopStart;
+
+    private final int[] tripIndex;
+    // Position of the row's update within its trip's stopTimeUpdates
+    private final int[] updateIndex;
+    private final int[] stopSequence;
+    private final long[] time;
+    private final long[] arrivalTime;
+    private final int[] arrivalDelay;
+    private final long[] departureTime;
+    private final int[] departureDelay;
+
+    StopTimeColumns(List<Trip> trips) {
+        this.trips = trips;
+
+        // Number the distinct stops in sorted order
+        Map<String, Integer> stopOrdinals = new HashMap<>();
+        int rows = 0;
+        for (Trip trip : trips) {
+            if (trip.getStopTimeUpdates() == null)
+                continue;
+            for (StopTimeUpdate update : trip.getStopTimeUpdates()) {
+                if (update.getStopId() != null) {
+                    stopOrdinals.putIfAbsent(update.getStopId(), 0);
+                    rows++;
+                }
+            }
+        }
+        stopIds = stopOrdinals.keySet().toArray(new String[0]);
+        Arrays.sort(stopIds);
+        for (int s = 0; s < stopIds.length; s++) {
+            stopOrdinals.put(stopIds[s], s);
+        }
+
+        // Counting sort of the rows by stop, keeping feed order within a stop
+        int[] stopOfRow = new int[rows];
+        StopTimeUpdate[] updateOfRow = new StopTimeUpdate[rows];
+        int[] tripOfRow = new int[rows];
+        int[] updateOfTrip = new int[rows];
+        stopStart = new int[stopIds.length + 1];
+        int row = 0;
+        for (int t = 0; t < trips.size(); t++) {
+            List<StopTimeUpdate> updates = trips.get(t).getStopTimeUpdates();
+            if (updates == null)
+                continue;
+            for (int u = 0; u < updates.size(); u++) {
+                StopTimeUpdate update = updates.get(u);
+                if (update.getStopId() != null) {
+                    int stop = stopOrdinals.get(update.getStopId());
+                    stopOfRow[row] = stop;
+                    updateOfRow[row] = update;
+                    tripOfRow[row] = t;
+                    updateOfTrip[row] = u;
+                    stopStart[stop + 1]++;
+                    row++;
+                }
+            }
+        }
+        for (int s = 0; s < stopIds.length; s++) {
+            stopStart[s + 1] += stopStart[s];
+        }
+        int[] order = new int[rows];
+        int[] next = Arrays.copyOf(stopStart, stopIds.length);
+        for (int r = 0; r < rows; r++) {
+            order[next[stopOfRow[r]]++] = r;
+        }
+
+        // Then by time within each stop
+        for (int s = 0; s < stopIds.length; s++) {
+            sortByTime(order, stopStart[s], stopStart[s + 1], updateOfRow);
+        }
+
+        tripIndex = new int[rows];
+        updateIndex = new int[rows];
+        stopSequence = new int[rows];
+        time = new long[rows];
+        arrivalTime = new long[rows];
+        arrivalDelay = new int[rows];
+        departureTime = new long[rows];
+        departureDelay = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            int r = order[i];
+            StopTimeUpdate update = updateOfRow[r];
+            tripIndex[i] = tripOfRow[r];
+            updateIndex[i] = updateOfTrip[r];
+            stopSequence[i] = update.getStopSequence();
+            arrivalTime[i] = eventTime(update.getArrival());
+            arrivalDelay[i] = eventDelay(update.getArrival());
+            departureTime[i] = eventTime(update.getDeparture());
+            departureDelay[i] = eventDelay(update.getDeparture());
+            time[i] = arrivalTime[i] != NO_TIME ? arrivalTime[i] : departureTime[i];
+        }
+    }
+
+    /**
+     * Total number of rows.
+     */
+    public int size() {
+        return tripIndex.length;
+    }
+
+    /**
+     * First row of a stop, or -1 if the stop has no updates.
+     */
+    public int firstRow(String stopId) {
+        int stop = stopId == null ? -1 : Arrays.binarySearch(stopIds, stopId);
+        return stop < 0 ? -1 : stopStart[stop];
+    }
+
+    /**
+     * One past the last row of a stop, or -1 if the stop has no updates.
+     */
+    public int endRow(String stopId) {
+        int stop = stopId == null ? -1 : Arrays.binarySearch(stopIds, stopId);
+        return stop < 0 ? -1 : stopStart[stop + 1];
+    }
+
+    /**
+     * First row of a stop whose time is at or after the given time, or
+     * {@link #endRow} if there is none.
+     */
+    public int firstRowAtOrAfter(String stopId, long atOrAfter) {
+        int stop = stopId == null ? -1 : Arrays.binarySearch(stopIds, stopId);
+        if (stop < 0)
+            return -1;
+
+        // Rows without a time sort last, so search only the timed prefix
+        int low = stopStart[stop];
+        int timedEnd = stopStart[stop + 1];
+        while (low < timedEnd && time[timedEnd - 1] == NO_TIME) {
+            timedEnd--;
+        }
+        int high = timedEnd;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time[mid] < atOrAfter)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low < timedEnd ? low : stopStart[stop + 1];
+    }
+
+    public Trip trip(int row) {
+        return trips.get(tripIndex[row]);
+    }
+
+    public StopTimeUpdate stopTimeUpdate(int row) {
+        return trip(row).getStopTimeUpdates().get(updateIndex[row]);
+    }
+
+    public int tripIndex(int row) {
+        return tripIndex[row];
+    }
+
+    public int stopSequence(int row) {
+        return stopSequence[row];
+    }
+
+    /**
+     * The row's sort time: its arrival time, or its departure time if it has
+     * no arrival.
+     */
+    public long time(int row) {
+        return time[row];
+    }
+
+    public long arrivalTime(int row) {
+        return arrivalTime[row];
+    }
+
+    public int arrivalDelay(int row) {
+        return arrivalDelay[row];
+    }
+
+    public long departureTime(int row) {
+        return departureTime[row];
+    }
+
+    public int departureDelay(int row) {
+        return departureDelay[row];
+    }
+
+    /**
+     * Approximate heap footprint of the columns in bytes, not counting the
+     * trips or stop id strings they refer to.
+     */
+    public long estimatedBytes() {
+        return 16 + 4L * stopIds.length
+                + 16 + 4L * stopStart.length
+                + (16 + 4L * size()) * 5
+                + (16 + 8L * size()) * 3;
+    }
+
+    private static void sortByTime(int[] order, int from, int to, StopTimeUpdate[] updateOfRow) {
+        int count = to - from;
+        if (count < 2)
+            return;
+
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            StopTimeUpdate update = updateOfRow[order[from + i]];
+            long eventTime = eventTime(update.getArrival());
+            if (eventTime == NO_TIME)
+                eventTime = eventTime(update.getDeparture());
+            long sortTime = eventTime == NO_TIME ? MAX_SORT_TIME : Math.min(Math.max(eventTime, 0), MAX_SORT_TIME - 1);
+            keys[i] = (sortTime << POSITION_BITS) | i;
+        }
+        // The position bits also make the sort stable
+        Arrays.sort(keys);
+
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = order[from + (int) (keys[i] & ((1 << POSITION_BITS) - 1))];
+        }
+        System.arraycopy(sorted, 0, order, from, count);
+    }
+
+    private static long eventTime(StopTimeEvent event) {
+        return event == null ? NO_TIME : event.getTime();
+    }
+
+    private static int eventDelay(StopTimeEvent event) {
+        return event == null ? NO_DELAY : event.getDelay();
+    }
+}
@@ -0,0 +1,292 @@
+package com.transittracker.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable scheduled stop times of one static feed.
+ *
+ * <p>
+ * stop_times.txt is usually the largest file in a feed, often millions of
+ * rows, so rows are not kept as entities. Trip and stop ids are interned to
+ * ints and each row is five ints in parallel arrays: trip, stop, stop sequence
+ * and arrival and departure as seconds since midnight of the service day
+ * (which may exceed 24 hours). Rows are sorted by trip and stop sequence, trip
+ * ids are sorted so a trip is found by binary search, and each route's stops
+ * are precomputed in travel order.
+ */
+public final class StopTimesStore {
+
+    public static final int NO_TIME = -1;
+
+    public static final StopTimesStore EMPTY = new Builder().build();
+
+    private final String[] tripIds;
+    // Rows of tripIds[t] are [tripStart[t], tripStart[t + 1])
+    private final int[] tripStart;
+    private final String[] stopIds;
+
+    private final int[] stop;
+    private final int[] stopSequence;
+    private final int[] arrival;
+    private final int[] departure;
+
+    private final Map<String, int[]> stopsByRouteId;
+
+    private StopTimesStore(String[] tripIds, int[] tripStart, String[] stopIds, int[] stop, int[] stopSequence,
+            int[] arrival, int[] departure, Map<String, int[]> stopsByRouteId) {
+        this.tripIds = tripIds;
+        this.tripStart = tripStart;
+        this.stopIds = stopIds;
+        this.stop = stop;
+        this.stopSequence = stopSequence;
+        this.arrival = arrival;
+        this.departure = departure;
+        this.stopsByRouteId = stopsByRouteId;
+    }
+
+    /**
+     * Number of stop times.
+     */
+    public int size() {
+        return stop.length;
+    }
+
+    public Set<String> routeIds() {
+        return stopsByRouteId.keySet();
+    }
+
+    /**
+     * Stop ids served by a route in travel order: the stops of its longest
+     * trip, followed by any stops only other trips serve. Empty if the route
+     * is unknown.
+     */
+    public List<String> stopIdsForRoute(String routeId) {
+        int[] stops = stopsByRouteId.get(routeId);
+        if (stops == null)
+            return Collections.emptyList();
+
+        List<String> ids = new ArrayList<>(stops.length);
+        for (int s : stops) {
+            ids.add(stopIds[s]);
+        }
+        return ids;
+    }
+
+    /**
+     * Scheduled arrival of a trip at a stop sequence in seconds since midnight,
+     * or {@link #NO_TIME}.
+     */
+    public int scheduledArrival(String tripId, int sequence) {
+        int row = find(tripId, sequence);
+        return row < 0 ? NO_TIME : arrival[row];
+    }
+
+    /**
+     * Scheduled departure of a trip from a stop sequence in seconds since
+     * midnight, or {@link #NO_TIME}.
+     */
+    public int scheduledDeparture(String tripId, int sequence) {
+        int row = find(tripId, sequence);
+        return row < 0 ? NO_TIME : departure[row];
+    }
+
+    /**
+     * Approximate heap footprint in bytes, not counting the id strings.
+     */
+    public long estimatedBytes() {
+        long bytes = 16 + 4L * tripIds.length + 16 + 4L * tripStart.length + 16 + 4L * stopIds.length
+                + (16 + 4L * size()) * 4;
+        for (int[] stops : stopsByRouteId.values()) {
+            bytes += 48 + 4L * stops.length;
+        }
+        return bytes;
+    }
+
+    private int find(String tripId, int sequence) {
+        int trip = tripId == null ? -1 : Arrays.binarySearch(tripIds, tripId);
+        if (trip < 0)
+            return -1;
+        int row = Arrays.binarySearch(stopSequence, tripStart[trip], tripStart[trip + 1], sequence);
+        return row < 0 ? -1 : row;
+    }
+
+    /**
+     * Parses a GTFS time ("HH:MM:SS", hours may exceed 23) into seconds since
+     * midnight, or returns {@link #NO_TIME} if it is blank or malformed.
+     */
+    public static int parseTime(String value) {
+        if (value == null)
+            return NO_TIME;
+        String time = value.strip();
+        int firstColon = time.indexOf(':');
+        int secondColon = time.indexOf(':', firstColon + 1);
+        if (firstColon < 1 || secondColon < 0)
+            return NO_TIME;
+        try {
+            int hours = Integer.parseInt(time, 0, firstColon, 10);
+            int minutes = Integer.parseInt(time, firstColon + 1, secondColon, 10);
+            int seconds = Integer.parseInt(time, secondColon + 1, time.length(), 10);
+            if (hours < 0 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59)
+                return NO_TIME;
+            return hours * 3600 + minutes * 60 + seconds;
+        } catch (NumberFormatException e) {
+            return NO_TIME;
+        }
+    }
+
+    /**
+     * Accumulates the rows of one feed. Not thread-safe.
+     */
+    public static final class Builder {
+
+        private final Map<String, Integer> tripOrdinals = new HashMap<>();
+        private final List<String> tripIds = new ArrayList<>();
+        private final Map<String, Integer> stopOrdinals = new HashMap<>();
+        private final List<String> stopIds = new ArrayList<>();
+        private final Map<String, String> routeIdByTripId = new HashMap<>();
+
+        private int[] trip = new int[1024];
+        private int[] stop = new int[1024];
+        private int[] stopSequence = new int[1024];
+        private int[] arrival = new int[1024];
+        private int[] departure = new int[1024];
+        private int count;
+
+        /**
+         * Records which route a trip belongs to, from trips.txt.
+         */
+        public Builder trip(String tripId, String routeId) {
+            if (tripId != null && routeId != null)
+                routeIdByTripId.put(tripId, routeId);
+            return this;
+        }
+
+        public Builder add(String tripId, String stopId, int sequence, int arrivalTime, int departureTime) {
+            if (tripId == null || stopId == null)
+                return this;
+
+            if (count == trip.length) {
+                int capacity = count * 2;
+                trip = Arrays.copyOf(trip, capacity);
+                stop = Arrays.copyOf(stop, capacity);
+                stopSequence = Arrays.copyOf(stopSequence, capacity);
+                arrival = Arrays.copyOf(arrival, capacity);
+                departure = Arrays.copyOf(departure, capacity);
+            }
+            trip[count] = intern(tripId, tripOrdinals, tripIds);
+            stop[count] = intern(stopId, stopOrdinals, stopIds);
+            stopSequence[count] = sequence;
+            arrival[count] = arrivalTime;
+            departure[count] = departureTime;
+            count++;
+            return this;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public StopTimesStore build() {
+            // Renumber trips in id order so lookups can binary search
+            String[] sortedTripIds = tripIds.toArray(new String[0]);
+            Arrays.sort(sortedTripIds);
+            int[] renumbered = new int[sortedTripIds.length];
+            for (int t = 0; t < sortedTripIds.length; t++) {
+                renumbered[tripOrdinals.get(sortedTripIds[t])] = t;
+            }
+
+            // Counting sort by trip, then by stop sequence within each trip
+            int[] tripStart = new int[sortedTripIds.length + 1];
+            for (int r = 0; r < count; r++) {
+                tripStart[renumbered[trip[r]] + 1]++;
+            }
+            for (int t = 0; t < sortedTripIds.length; t++) {
+                tripStart[t + 1] += tripStart[t];
+            }
+            int[] order = new int[count];
+            int[] next = Arrays.copyOf(tripStart, sortedTripIds.length);
+            for (int r = 0; r < count; r++) {
+                order[next[renumbered[trip[r]]]++] = r;
+            }
+            for (int t = 0; t < sortedTripIds.length; t++) {
+                sortBySequence(order, tripStart[t], tripStart[t + 1]);
+            }
+
+            int[] sortedStop = new int[count];
+            int[] sortedSequence = new int[count];
+            int[] sortedArrival = new int[count];
+            int[] sortedDeparture = new int[count];
+            for (int i = 0; i < count; i++) {
+                int r = order[i];
+                sortedStop[i] = stop[r];
+                sortedSequence[i] = stopSequence[r];
+                sortedArrival[i] = arrival[r];
+                sortedDeparture[i] = departure[r];
+            }
+
+            return new StopTimesStore(sortedTripIds, tripStart, stopIds.toArray(new String[0]), sortedStop,
+                    sortedSequence, sortedArrival, sortedDeparture,
+                    stopsByRoute(sortedTripIds, tripStart, sortedStop));
+        }
+
+        private Map<String, int[]> stopsByRoute(String[] sortedTripIds, int[] tripStart, int[] sortedStop) {
+            // Longest trip first, so its stops set the order and shorter trips
+            // only add the stops it misses
+            Map<String, List<Integer>> tripsByRoute = new HashMap<>();
+            for (int t = 0; t < sortedTripIds.length; t++) {
+                String routeId = routeIdByTripId.get(sortedTripIds[t]);
+                if (routeId != null)
+                    tripsByRoute.computeIfAbsent(routeId, k -> new ArrayList<>()).add(t);
+            }
+
+            Map<String, int[]> stopsByRoute = new HashMap<>();
+            tripsByRoute.forEach((routeId, trips) -> {
+                trips.sort((a, b) -> (tripStart[b + 1] - tripStart[b]) - (tripStart[a + 1] - tripStart[a]));
+                Set<Integer> ordered = new LinkedHashSet<>();
+                for (int t : trips) {
+                    for (int r = tripStart[t]; r < tripStart[t + 1]; r++) {
+                        ordered.add(sortedStop[r]);
+                    }
+                }
+                stopsByRoute.put(routeId, ordered.stream().mapToInt(Integer::intValue).toArray());
+            });
+            return stopsByRoute;
+        }
+
+        private void sortBySequence(int[] order, int from, int to) {
+            int length = to - from;
+            if (length < 2)
+                return;
+
+            // Stop sequences are non-negative ints, so a key packs the sequence
+            // above the row's position and one primitive sort orders them
+            long[] keys = new long[length];
+            for (int i = 0; i < length; i++) {
+                keys[i] = ((long) stopSequence[order[from + i]] << 32) | i;
+            }
+            Arrays.sort(keys);
+            int[] sorted = new int[length];
+            for (int i = 0; i < length; i++) {
+                sorted[i] = order[from + (int) keys[i]];
+            }
+            System.arraycopy(sorted, 0, order, from, length);
+        }
+
+        private static int intern(String id, Map<String, Integer> ordinals, List<String> ids) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null) {
+                ordinal = ids.size();
+                ordinals.put(id, ordinal);
+                ids.add(id);
+            }
+            return ordinal;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.transittracker.repository;
+
+import com.transittracker.config.SubscriptionConfig;
+import com.transittracker.config.SubscriptionConfig.BackpressurePolicy;
+import com.transittracker.model.SubscriberStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies the configured backpressure policy to each subscriber individually
+ * and tracks what every subscriber received, dropped or had conflated. The
+ * shared sinks never buffer, so a slow client only ever holds its own bounded
+ * backlog.
+ */
+final class SubscriberBackpressure {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriberBackpressure.class);
+
+    private final SubscriptionConfig config;
+    private final AtomicLong nextSubscriberId = new AtomicLong();
+    private final Map<Long, SubscriberStats> subscribers = new ConcurrentHashMap<>();
+
+    SubscriberBackpressure(SubscriptionConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Wraps a per-subscriber stream with the configured policy.
+     */
+    <T> Flux<T> apply(String topic, Flux<T> source) {
+        return apply(topic, source, config.getBackpressurePolicy());
+    }
+
+    /**
+     * Wraps a stream whose events must not be dropped (e.g. deltas, where a
+     * missing event silently corrupts the client's state). Such subscribers
+     * are disconnected instead, and resynchronize from a fresh snapshot.
+     */
+    <T> Flux<T> applyLossless(String topic, Flux<T> source) {
+        return apply(topic, source, BackpressurePolicy.DISCONNECT);
+    }
+
+    List<SubscriberStats> getStats() {
+        return List.copyOf(subscribers.values());
+    }
+
+    private <T> Flux<T> apply(String topic, Flux<T> source, BackpressurePolicy policy) {
+        return Flux.defer(() -> {
+            SubscriberStats stats = new SubscriberStats(nextSubscriberId.incrementAndGet(), topic, policy.name(),
+                    System.currentTimeMillis());
+            subscribers.put(stats.getSubscriberId(), stats);
+
+            Flux<T> counted = source.doOnNext(event -> stats.recordReceived());
+            Flux<T> bounded = switch (policy) {
+                // Same as onBackpressureLatest, but reports each event it replaces
+                case LATEST -> counted.onBackpressureBuffer(1, event -> stats.recordConflated(),
+                        BufferOverflowStrategy.DROP_OLDEST);
+                case BUFFER -> counted.onBackpressureBuffer(config.getBufferSize(),
+                        event -> stats.recordDropped(), BufferOverflowStrategy.DROP_OLDEST);
+                case DISCONNECT -> counted.onBackpressureBuffer(config.getMaxMissedTicks(),
+                        event -> {
+                            stats.recordDropped();
+                            logger.warn("Disconnecting subscriber {} on {} after {} missed ticks",
+                                    stats.getSubscriberId(), topic, config.getMaxMissedTicks());
+                        }, BufferOverflowStrategy.ERROR);
+            };
+
+            return bounded
+                    .doOnNext(event -> stats.recordDelivered())
+                    .doFinally(signal -> {
+                        subscribers.remove(stats.getSubscriberId());
+                        if (stats.getDropped() > 0 || stats.getConflated() > 0) {
+                            logger.info("Subscriber {} on {} ended ({}): {} delivered, {} dropped, {} conflated",
+                                    stats.getSubscriberId(), topic, signal, stats.getDelivered(),
+                                    stats.getDropped(), stats.getConflated());
+                        }
+                    });
+        });
+    }
+}
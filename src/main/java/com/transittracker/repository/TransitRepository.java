@@ -1,42 +1,215 @@
 package com.transittracker.repository;
 
+import com.transittracker.config.SubscriptionConfig;
+import com.transittracker.model.SubscriberStats;
 import com.transittracker.model.Trip;
+import com.transittracker.model.TripDeltaEvent;
 import com.transittracker.model.TripUpdateEvent;
 import com.transittracker.model.VehiclePosition;
 import org.springframework.stereotype.Repository;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Sinks;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
 
 @Repository
 public class TransitRepository {
 
     // Volatile reference swap ensures atomic updates — readers always see a
-    // complete list
-    private volatile List<Trip> trips = Collections.emptyList();
-    private volatile List<VehiclePosition> vehiclePositions = Collections.emptyList();
-    private final Sinks.Many<TripUpdateEvent> sink = Sinks.many().multicast().onBackpressureBuffer();
+    // complete snapshot whose lists and indexes agree with each other
+    private volatile TransitSnapshot snapshot = TransitSnapshot.EMPTY;
+
+    // Subscribers without a routeId share the global sinks; everyone else gets
+    // the topic for their route so nobody filters the whole feed per tick.
+    // The sinks themselves never buffer — see SubscriberBackpressure
+    private final Sinks.Many<TripUpdateEvent> sink = Sinks.many().multicast().directBestEffort();
+    private final Sinks.Many<TripDeltaEvent> deltaSink = Sinks.many().multicast().directBestEffort();
+    private final RouteTopics<TripUpdateEvent> tripUpdateTopics = new RouteTopics<>();
+    private final RouteTopics<TripDeltaEvent> tripDeltaTopics = new RouteTopics<>();
+    private final SubscriberBackpressure backpressure;
+
+    public TransitRepository(SubscriptionConfig subscriptionConfig) {
+        this.backpressure = new SubscriberBackpressure(subscriptionConfig);
+    }
+
+    // Latest data per agency; the snapshot holds their concatenation. Only
+    // touched while holding the repository lock.
+    private final Map<String, List<Trip>> tripsByAgency = new TreeMap<>();
+    private final Map<String, List<VehiclePosition>> vehiclePositionsByAgency = new TreeMap<>();
 
     public void updateTrips(List<Trip> newTrips) {
-        this.trips = List.copyOf(newTrips);
-        sink.tryEmitNext(new TripUpdateEvent(newTrips, System.currentTimeMillis()));
+        updateTrips("", newTrips);
+    }
+
+    // Updates are serialized so feeds updating concurrently cannot drop one
+    // another's part of the snapshot
+    public synchronized void updateTrips(String agency, List<Trip> newTrips) {
+        tripsByAgency.put(agency, newTrips);
+
+        TransitSnapshot previous = snapshot;
+        TransitSnapshot current = previous.withTrips(concat(tripsByAgency));
+        this.snapshot = current;
+
+        long now = System.currentTimeMillis();
+        publishTripUpdates(current, now);
+        publishTripDeltas(current.tripDeltaSince(previous, now), previous);
     }
 
     public void updateVehiclePositions(List<VehiclePosition> newPositions) {
-        this.vehiclePositions = List.copyOf(newPositions);
+        updateVehiclePositions("", newPositions);
+    }
+
+    public synchronized void updateVehiclePositions(String agency, List<VehiclePosition> newPositions) {
+        vehiclePositionsByAgency.put(agency, newPositions);
+        this.snapshot = snapshot.withVehiclePositions(concat(vehiclePositionsByAgency));
+    }
+
+    public TransitSnapshot getSnapshot() {
+        return snapshot;
     }
 
     public List<Trip> getAllTrips() {
-        return trips;
+        return snapshot.getTrips();
     }
 
     public List<VehiclePosition> getAllVehiclePositions() {
-        return vehiclePositions;
+        return snapshot.getVehiclePositions();
     }
 
     public Flux<TripUpdateEvent> getTripUpdates() {
-        return sink.asFlux();
+        return getTripUpdates(null);
+    }
+
+    /**
+     * Streams full trip updates for a single route, or for all routes when
+     * routeId is null. A subscriber that falls behind is handled by the
+     * configured backpressure policy.
+     */
+    public Flux<TripUpdateEvent> getTripUpdates(String routeId) {
+        Flux<TripUpdateEvent> updates = routeId == null ? sink.asFlux() : tripUpdateTopics.subscribe(routeId);
+        return backpressure.apply(topicName("feedUpdates", routeId), updates);
+    }
+
+    public Flux<TripDeltaEvent> getTripDeltas() {
+        return getTripDeltas(null);
+    }
+
+    /**
+     * Streams trip changes only, starting with a full snapshot of the current
+     * trips. Deltas already reflected in that snapshot are skipped by version.
+     * When routeId is set, both the snapshot and the deltas cover that route only.
+     * Deltas are never dropped: a subscriber that falls too far behind is
+     * disconnected and must resubscribe for a fresh snapshot.
+     */
+    public Flux<TripDeltaEvent> getTripDeltas(String routeId) {
+        Flux<TripDeltaEvent> deltas = routeId == null ? deltaSink.asFlux() : tripDeltaTopics.subscribe(routeId);
+        return backpressure.applyLossless(topicName("feedDeltas", routeId), Flux.defer(() -> {
+            // Subscribe before reading the snapshot and hold deltas until it has
+            // been sent, so one published in between is neither lost nor
+            // applied twice
+            Sinks.Many<TripDeltaEvent> pending = Sinks.many().unicast().onBackpressureBuffer();
+            Disposable upstream = deltas.subscribe(pending::tryEmitNext, pending::tryEmitError,
+                    pending::tryEmitComplete);
+
+            TransitSnapshot current = snapshot;
+            List<Trip> trips = routeId == null ? current.getTrips() : current.getTripsByRouteId(routeId);
+            TripDeltaEvent initial = new TripDeltaEvent(true, current.getVersion(), System.currentTimeMillis(),
+                    trips, List.of(), List.of());
+            return pending.asFlux()
+                    .filter(delta -> delta.getVersion() > current.getVersion())
+                    .startWith(initial)
+                    .doFinally(signal -> upstream.dispose());
+        }));
+    }
+
+    /**
+     * Per-subscriber delivery counters for every open subscription.
+     */
+    public List<SubscriberStats> getSubscriberStats() {
+        return backpressure.getStats();
+    }
+
+    private static String topicName(String subscription, String routeId) {
+        return routeId == null ? subscription : subscription + ":" + routeId;
+    }
+
+    private void publishTripUpdates(TransitSnapshot current, long timestamp) {
+        sink.tryEmitNext(new TripUpdateEvent(current.getTrips(), timestamp));
+
+        // Route partitions come straight from the snapshot's routeId index, so a
+        // tick costs one lookup per watched route
+        for (String routeId : tripUpdateTopics.activeRouteIds()) {
+            tripUpdateTopics.publish(routeId, new TripUpdateEvent(current.getTripsByRouteId(routeId), timestamp));
+        }
+    }
+
+    private void publishTripDeltas(TripDeltaEvent delta, TransitSnapshot previous) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        deltaSink.tryEmitNext(delta);
+
+        if (tripDeltaTopics.activeRouteIds().isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, TripDeltaEvent> entry : partitionByRoute(delta, previous).entrySet()) {
+            tripDeltaTopics.publish(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static <T> List<T> concat(Map<String, List<T>> byAgency) {
+        if (byAgency.size() == 1) {
+            return byAgency.values().iterator().next();
+        }
+        List<T> all = new ArrayList<>();
+        byAgency.values().forEach(all::addAll);
+        return all;
+    }
+
+    /**
+     * Splits a delta into one delta per routeId. Routes with no changes get no
+     * entry, so their subscribers are not woken up. A changed trip that moved
+     * to another route is removed from the old route's partition and added to
+     * the new one's.
+     */
+    private static Map<String, TripDeltaEvent> partitionByRoute(TripDeltaEvent delta, TransitSnapshot previous) {
+        Map<String, TripDeltaEvent> byRoute = new HashMap<>();
+        Function<String, TripDeltaEvent> newPartition = routeId -> new TripDeltaEvent(false, delta.getVersion(),
+                delta.getTimestamp(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+
+        for (Trip trip : delta.getAdded()) {
+            if (trip.getRouteId() != null) {
+                byRoute.computeIfAbsent(trip.getRouteId(), newPartition).getAdded().add(trip);
+            }
+        }
+        for (Trip trip : delta.getChanged()) {
+            Trip before = previous.getTripByTripId(trip.getTripId());
+            String previousRouteId = before != null ? before.getRouteId() : null;
+            if (Objects.equals(previousRouteId, trip.getRouteId())) {
+                if (trip.getRouteId() != null) {
+                    byRoute.computeIfAbsent(trip.getRouteId(), newPartition).getChanged().add(trip);
+                }
+                continue;
+            }
+            if (previousRouteId != null) {
+                byRoute.computeIfAbsent(previousRouteId, newPartition).getRemoved().add(before);
+            }
+            if (trip.getRouteId() != null) {
+                byRoute.computeIfAbsent(trip.getRouteId(), newPartition).getAdded().add(trip);
+            }
+        }
+        for (Trip trip : delta.getRemoved()) {
+            if (trip.getRouteId() != null) {
+                byRoute.computeIfAbsent(trip.getRouteId(), newPartition).getRemoved().add(trip);
+            }
+        }
+        return byRoute;
     }
 }
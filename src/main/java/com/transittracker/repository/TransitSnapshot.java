@@ -0,0 +1,132 @@
+package com.transittracker.repository;
+
+import com.transittracker.model.Arrival;
+import com.transittracker.model.Trip;
+import com.transittracker.model.TripDeltaEvent;
+import com.transittracker.model.VehiclePosition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable view of the latest realtime data together with its secondary
+ * indexes. A new instance is built on every update and published with a single
+ * volatile write, so readers never see a list and its indexes out of sync.
+ */
+public final class TransitSnapshot {
+
+    static final TransitSnapshot EMPTY = new TransitSnapshot(0, TripIndex.EMPTY, VehiclePositionIndex.EMPTY);
+
+    // Incremented on every update so subscribers can tell which deltas a
+    // snapshot already includes
+    private final long version;
+    private final TripIndex tripIndex;
+    private final VehiclePositionIndex vehiclePositionIndex;
+
+    private TransitSnapshot(long version, TripIndex tripIndex, VehiclePositionIndex vehiclePositionIndex) {
+        this.version = version;
+        this.tripIndex = tripIndex;
+        this.vehiclePositionIndex = vehiclePositionIndex;
+    }
+
+    /**
+     * Returns a copy of this snapshot with the trips replaced. The vehicle
+     * position index is shared, not rebuilt, and trips carried over from the
+     * current index keep their content hashes.
+     */
+    TransitSnapshot withTrips(List<Trip> trips) {
+        return new TransitSnapshot(version + 1, new TripIndex(trips, tripIndex), vehiclePositionIndex);
+    }
+
+    /**
+     * Returns a copy of this snapshot with the vehicle positions replaced. The
+     * trip index is shared, not rebuilt.
+     */
+    TransitSnapshot withVehiclePositions(List<VehiclePosition> positions) {
+        return new TransitSnapshot(version + 1, tripIndex, new VehiclePositionIndex(positions));
+    }
+
+    /**
+     * Returns the trips that were added, changed or removed between the previous
+     * snapshot and this one.
+     */
+    TripDeltaEvent tripDeltaSince(TransitSnapshot previous, long timestamp) {
+        return tripIndex.diff(previous.tripIndex, version, timestamp);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Trip> getTrips() {
+        return tripIndex.all();
+    }
+
+    public List<Trip> getTripsByRouteId(String routeId) {
+        return tripIndex.byRouteId(routeId);
+    }
+
+    /**
+     * Every trip the vehicle is assigned to, in feed order.
+     */
+    public List<Trip> getTripsByVehicleId(String vehicleId) {
+        return tripIndex.byVehicleId(vehicleId);
+    }
+
+    public Trip getTripByTripId(String tripId) {
+        return tripIndex.byTripId(tripId);
+    }
+
+    /**
+     * The trips' stop time updates as columns sorted by stop and time.
+     */
+    public StopTimeColumns getStopTimeColumns() {
+        return tripIndex.stopTimes();
+    }
+
+    /**
+     * Up to {@code limit} stop time updates at a stop whose arrival (or
+     * departure, if there is no arrival) falls within [from, to], in time
+     * order. Times are POSIX seconds. Updates sent with only a delay were
+     * given a time from the static schedule when converted; those the schedule
+     * doesn't have remain without one and are left out.
+     */
+    public List<Arrival> getArrivals(String stopId, long from, long to, int limit) {
+        StopTimeColumns columns = tripIndex.stopTimes();
+        int row = columns.firstRowAtOrAfter(stopId, from);
+        if (row < 0 || limit <= 0) {
+            return List.of();
+        }
+
+        int end = columns.endRow(stopId);
+        List<Arrival> arrivals = new ArrayList<>(Math.min(limit, end - row));
+        for (; row < end && arrivals.size() < limit; row++) {
+            long time = columns.time(row);
+            if (time == StopTimeColumns.NO_TIME || time > to) {
+                break;
+            }
+            arrivals.add(new Arrival(columns.trip(row), columns.stopTimeUpdate(row)));
+        }
+        return arrivals;
+    }
+
+    public List<VehiclePosition> getVehiclePositions() {
+        return vehiclePositionIndex.all();
+    }
+
+    public List<VehiclePosition> getVehiclePositionsByRouteId(String routeId) {
+        return vehiclePositionIndex.byRouteId(routeId);
+    }
+
+    /**
+     * Vehicles within the radius of a point, nearest first.
+     */
+    public List<VehiclePosition> getVehiclePositionsNear(double lat, double lon, double radiusMeters) {
+        return vehiclePositionIndex.near(lat, lon, radiusMeters);
+    }
+
+    public List<VehiclePosition> getVehiclePositionsInBox(double minLat, double minLon, double maxLat,
+            double maxLon) {
+        return vehiclePositionIndex.inBox(minLat, minLon, maxLat, maxLon);
+    }
+}
@@ -0,0 +1,164 @@
+package com.transittracker.repository;
+
+import com.transittracker.model.StopTimeEvent;
+import com.transittracker.model.StopTimeUpdate;
+import com.transittracker.model.Trip;
+import com.transittracker.model.TripDeltaEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable trip list plus its lookup tables, built once per trip update.
+ */
+final class TripIndex {
+
+    static final TripIndex EMPTY = new TripIndex(Collections.emptyList());
+
+    private final List<Trip> trips;
+    private final Map<String, List<Trip>> byRouteId = new HashMap<>();
+    private final Map<String, List<Trip>> byVehicleId = new HashMap<>();
+    private final Map<String, Trip> byTripId = new HashMap<>();
+    private final Map<String, Long> contentHashByTripId = new HashMap<>();
+    private final StopTimeColumns stopTimes;
+
+    TripIndex(List<Trip> trips) {
+        this(trips, null);
+    }
+
+    /**
+     * Builds an index, taking the content hash of any trip carried over
+     * unchanged (the same object) from the previous index instead of
+     * recomputing it.
+     */
+    TripIndex(List<Trip> trips, TripIndex previous) {
+        this.trips = List.copyOf(trips);
+
+        for (Trip trip : this.trips) {
+            if (trip.getRouteId() != null) {
+                byRouteId.computeIfAbsent(trip.getRouteId(), k -> new ArrayList<>()).add(trip);
+            }
+            if (trip.getVehicle() != null && trip.getVehicle().getId() != null) {
+                // Blocks and interlined trips put one vehicle on several trips
+                byVehicleId.computeIfAbsent(trip.getVehicle().getId(), k -> new ArrayList<>()).add(trip);
+            }
+            if (trip.getTripId() != null && byTripId.putIfAbsent(trip.getTripId(), trip) == null) {
+                Long hash = previous != null && previous.byTripId.get(trip.getTripId()) == trip
+                        ? previous.contentHashByTripId.get(trip.getTripId())
+                        : null;
+                contentHashByTripId.put(trip.getTripId(), hash != null ? hash : contentHash(trip));
+            }
+        }
+        byRouteId.replaceAll((routeId, group) -> Collections.unmodifiableList(group));
+        byVehicleId.replaceAll((vehicleId, group) -> Collections.unmodifiableList(group));
+        stopTimes = new StopTimeColumns(this.trips);
+    }
+
+    List<Trip> all() {
+        return trips;
+    }
+
+    List<Trip> byRouteId(String routeId) {
+        return byRouteId.getOrDefault(routeId, Collections.emptyList());
+    }
+
+    List<Trip> byVehicleId(String vehicleId) {
+        return byVehicleId.getOrDefault(vehicleId, Collections.emptyList());
+    }
+
+    Trip byTripId(String tripId) {
+        return byTripId.get(tripId);
+    }
+
+    StopTimeColumns stopTimes() {
+        return stopTimes;
+    }
+
+    /**
+     * Diffs this index against the previous one by tripId. Trips whose content
+     * hash is unchanged are left out; trips without a tripId cannot be tracked
+     * across polls and are only delivered in full snapshots.
+     */
+    TripDeltaEvent diff(TripIndex previous, long version, long timestamp) {
+        List<Trip> added = new ArrayList<>();
+        List<Trip> changed = new ArrayList<>();
+        List<Trip> removed = new ArrayList<>();
+
+        // Walk the lists rather than the maps so deltas keep feed order
+        for (Trip trip : trips) {
+            String tripId = trip.getTripId();
+            if (tripId == null || byTripId.get(tripId) != trip) {
+                continue;
+            }
+            if (previous.byTripId.get(tripId) == trip) {
+                // Reused by the conversion because nothing changed
+                continue;
+            }
+            Long previousHash = previous.contentHashByTripId.get(tripId);
+            if (previousHash == null) {
+                added.add(trip);
+            } else if (previousHash != contentHashByTripId.get(tripId).longValue()) {
+                changed.add(trip);
+            }
+        }
+        for (Trip trip : previous.trips) {
+            String tripId = trip.getTripId();
+            if (tripId != null && previous.byTripId.get(tripId) == trip && !byTripId.containsKey(tripId)) {
+                removed.add(trip);
+            }
+        }
+
+        return new TripDeltaEvent(false, version, timestamp, added, changed, removed);
+    }
+
+    private static long contentHash(Trip trip) {
+        long hash = mix(1, trip.getRouteId());
+        hash = mix(hash, trip.getRouteName());
+        hash = mix(hash, trip.getTripHeadsign());
+        hash = mix(hash, trip.getScheduleRelationship());
+        if (trip.getVehicle() != null) {
+            hash = mix(hash, trip.getVehicle().getId());
+            hash = mix(hash, trip.getVehicle().getLabel());
+        }
+        if (trip.getStopTimeUpdates() != null) {
+            for (StopTimeUpdate update : trip.getStopTimeUpdates()) {
+                hash = mix(hash, update.getStopSequence());
+                hash = mix(hash, update.getStopId());
+                hash = mix(hash, update.getStopName());
+                hash = mix(hash, update.getArrival());
+                hash = mix(hash, update.getDeparture());
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, StopTimeEvent event) {
+        if (event == null) {
+            return mix(hash, -1L);
+        }
+        return mix(mix(hash, event.getTime()), event.getDelay());
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            return mix(hash, -1L);
+        }
+        // Every character goes in: String.hashCode() is only 32 bits and
+        // collides on short ids such as "Aa" and "BB", hiding the change
+        long content = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            content = content * 0x100000001B3L + value.charAt(i);
+        }
+        return mix(hash, content);
+    }
+
+    private static long mix(long hash, long value) {
+        // 64-bit multiply-xorshift so small edits (e.g. one delay changing by a
+        // second) spread across the whole hash
+        hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+}
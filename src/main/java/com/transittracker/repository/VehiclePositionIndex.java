@@ -0,0 +1,54 @@
+package com.transittracker.repository;
+
+import com.transittracker.model.VehiclePosition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable vehicle position list plus its lookup tables, built once per
+ * vehicle position update.
+ */
+final class VehiclePositionIndex {
+
+    static final VehiclePositionIndex EMPTY = new VehiclePositionIndex(Collections.emptyList());
+
+    // About 1.1 km north-south, so a city viewport touches a few dozen cells
+    private static final double GRID_CELL_DEGREES = 0.01;
+
+    private final List<VehiclePosition> positions;
+    private final Map<String, List<VehiclePosition>> byRouteId = new HashMap<>();
+    private final GeoGrid<VehiclePosition> grid;
+
+    VehiclePositionIndex(List<VehiclePosition> positions) {
+        this.positions = List.copyOf(positions);
+
+        for (VehiclePosition position : this.positions) {
+            if (position.getRouteId() != null) {
+                byRouteId.computeIfAbsent(position.getRouteId(), k -> new ArrayList<>()).add(position);
+            }
+        }
+        byRouteId.replaceAll((routeId, group) -> Collections.unmodifiableList(group));
+        grid = new GeoGrid<>(this.positions, VehiclePosition::getLatitude, VehiclePosition::getLongitude,
+                GRID_CELL_DEGREES);
+    }
+
+    List<VehiclePosition> all() {
+        return positions;
+    }
+
+    List<VehiclePosition> byRouteId(String routeId) {
+        return byRouteId.getOrDefault(routeId, Collections.emptyList());
+    }
+
+    List<VehiclePosition> near(double lat, double lon, double radiusMeters) {
+        return grid.near(lat, lon, radiusMeters);
+    }
+
+    List<VehiclePosition> inBox(double minLat, double minLon, double maxLat, double maxLon) {
+        return grid.inBox(minLat, minLon, maxLat, maxLon);
+    }
+}
@@ -0,0 +1,133 @@
+package com.transittracker.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Decides when to poll a realtime feed next. It learns how often the producer
+ * publishes from successive FeedHeader.timestamp values and aims just after the
+ * next expected publish, within [min, max] and with a little random jitter so
+ * many feeds don't poll in lockstep. Consecutive fetch failures back off
+ * exponentially from the base interval. When a publish is overdue the feed is
+ * checked at the minimum interval, but after a few checks that find nothing
+ * new the interval doubles up to the maximum, so a stalled producer isn't
+ * polled at the fastest rate indefinitely.
+ */
+final class AdaptivePollSchedule {
+
+    // Number of recent publish intervals (and observation lags) to remember
+    private static final int HISTORY = 8;
+    // Overdue checks at the minimum interval before backing off
+    private static final int OVERDUE_CHECKS = 3;
+
+    private final Duration baseInterval;
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private final Duration jitter;
+    private final boolean adaptive;
+    private final RandomGenerator random;
+
+    private final long[] publishIntervals = new long[HISTORY];
+    private final long[] observationLags = new long[HISTORY];
+    private int sampleCount;
+    private int nextSample;
+    private long lastHeaderTimestamp;
+    private int consecutiveFailures;
+    // Successful polls since the expected publish that found no new one
+    private int overdueMisses;
+
+    AdaptivePollSchedule(Duration baseInterval, Duration minInterval, Duration maxInterval, Duration jitter,
+            boolean adaptive, RandomGenerator random) {
+        this.baseInterval = baseInterval;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.jitter = jitter;
+        this.adaptive = adaptive;
+        this.random = random;
+    }
+
+    /**
+     * Records a successful poll. headerTimestamp is the feed's FeedHeader
+     * timestamp in POSIX seconds (0 if unknown); it only counts as a new
+     * publication if it moved forward.
+     */
+    synchronized void recordSuccess(long headerTimestamp, Instant observedAt) {
+        consecutiveFailures = 0;
+        if (headerTimestamp <= lastHeaderTimestamp) {
+            if (adaptive && sampleCount > 0 && observedAt.getEpochSecond() >= expectedPublish()) {
+                overdueMisses++;
+            }
+            return;
+        }
+        overdueMisses = 0;
+        if (lastHeaderTimestamp > 0) {
+            publishIntervals[nextSample] = headerTimestamp - lastHeaderTimestamp;
+            // How long after the producer's timestamp we saw it; the smallest lag
+            // absorbs clock skew and publish latency
+            observationLags[nextSample] = observedAt.getEpochSecond() - headerTimestamp;
+            nextSample = (nextSample + 1) % HISTORY;
+            sampleCount = Math.min(sampleCount + 1, HISTORY);
+        }
+        lastHeaderTimestamp = headerTimestamp;
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+    }
+
+    synchronized Duration nextDelay(Instant now) {
+        if (consecutiveFailures > 0) {
+            // 2x, 4x, 8x... the base interval; the shift is capped well before overflow
+            long backoff = baseInterval.toMillis() << Math.min(consecutiveFailures, 16);
+            return withJitter(Math.min(backoff, maxInterval.toMillis()));
+        }
+        if (!adaptive || sampleCount == 0) {
+            return withJitter(baseInterval.toMillis());
+        }
+
+        if (overdueMisses >= OVERDUE_CHECKS) {
+            // 2x, 4x, 8x... the minimum interval, as for failures
+            long backoff = minInterval.toMillis() << Math.min(overdueMisses - OVERDUE_CHECKS + 1, 16);
+            return withJitter(Math.min(backoff, maxInterval.toMillis()));
+        }
+        // A negative delay means the publish is overdue; withJitter clamps it to
+        // the minimum so we keep checking at the fastest allowed rate
+        return withJitter(expectedPublish() * 1000 - now.toEpochMilli());
+    }
+
+    /**
+     * When the next publish should be visible, in POSIX seconds.
+     */
+    private long expectedPublish() {
+        return lastHeaderTimestamp + median(publishIntervals) + min(observationLags);
+    }
+
+    /**
+     * The learned publish interval, or null until two publications have been
+     * seen.
+     */
+    synchronized Duration estimatedPublishInterval() {
+        return sampleCount == 0 ? null : Duration.ofSeconds(median(publishIntervals));
+    }
+
+    private Duration withJitter(long delayMillis) {
+        long jittered = delayMillis + (jitter.isZero() ? 0 : random.nextLong(jitter.toMillis() + 1));
+        return Duration.ofMillis(Math.max(minInterval.toMillis(), Math.min(maxInterval.toMillis(), jittered)));
+    }
+
+    private long median(long[] samples) {
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private long min(long[] samples) {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < sampleCount; i++) {
+            min = Math.min(min, samples[i]);
+        }
+        return min;
+    }
+}
@@ -0,0 +1,76 @@
+package com.transittracker.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Hands parsed batches to a shared write pool so parsing the next batch
+ * overlaps with inserting the previous one. The semaphore is shared by every
+ * writer on the same pool and bounds how many batches are parsed but not yet
+ * written, which caps memory no matter how many feeds are loading.
+ *
+ * <p>
+ * One instance tracks the writes of one feed, so {@link #await()} only waits
+ * for (and reports failures from) that feed.
+ */
+final class BatchWriter {
+
+    private final Executor executor;
+    private final Semaphore permits;
+    private final List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+    BatchWriter(Executor executor, Semaphore permits) {
+        this.executor = executor;
+        this.permits = permits;
+    }
+
+    /**
+     * Queues a copy of the batch for writing and clears it so the caller can
+     * reuse the list. Blocks while too many batches are already in flight.
+     * Returns the number of entities queued.
+     */
+    <T> int submit(Consumer<List<T>> writer, List<T> batch) throws InterruptedException {
+        int size = batch.size();
+        if (size == 0)
+            return 0;
+
+        List<T> copy = new ArrayList<>(batch);
+        batch.clear();
+
+        permits.acquire();
+        try {
+            pending.add(CompletableFuture.runAsync(() -> {
+                try {
+                    writer.accept(copy);
+                } finally {
+                    permits.release();
+                }
+            }, executor));
+        } catch (RuntimeException e) {
+            // Rejected by the pool, so the task will never release its permit
+            permits.release();
+            throw e;
+        }
+        return size;
+    }
+
+    /**
+     * Waits for every batch submitted so far and rethrows the first failure.
+     */
+    void await() {
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        } finally {
+            pending.clear();
+        }
+    }
+}
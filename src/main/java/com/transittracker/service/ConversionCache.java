@@ -0,0 +1,215 @@
+package com.transittracker.service;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.transittracker.config.RealtimeFeed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Remembers a digest of each entity of one feed's previous poll and what it
+ * was converted to. Most entities are identical from one poll to the next, so
+ * conversion can hand back the previous object instead of allocating a new
+ * one. Only the 64-bit digests are kept, never the protobuf entities, so a
+ * feed costs a few words per entity on top of its converted objects.
+ *
+ * <p>
+ * Ids decoded from the feed are interned against the static catalog's ids
+ * the first time they are seen, and against the previous poll's after that,
+ * so each distinct id is held once.
+ *
+ * <p>
+ * Each poll works on its own {@link Generation}, which becomes the previous
+ * one only when the feed was read completely.
+ */
+final class ConversionCache<T> {
+
+    private static final long[] NO_PARTS = new long[0];
+
+    private volatile Generation<T> last = new Generation<>(Map.of(), Map.of());
+
+    Generation<T> next() {
+        Generation<T> previous = last;
+        return new Generation<>(previous.entries, previous.ids);
+    }
+
+    void commit(Generation<T> generation) {
+        last = generation;
+    }
+
+    /**
+     * One poll's entries. Not thread safe; a feed is decoded on one thread.
+     */
+    static final class Generation<T> {
+
+        private final Map<String, Entry<T>> previousEntries;
+        private final Map<String, String> previousIds;
+        private final Map<String, Entry<T>> entries = new HashMap<>();
+        // Raw feed id to the (possibly namespaced) id handed to clients
+        private final Map<String, String> ids = new HashMap<>();
+
+        private final DigestOutputStream digestOut = new DigestOutputStream();
+        private final CodedOutputStream coded = CodedOutputStream.newInstance(digestOut, 4096);
+
+        // State of the entity being converted, reset by reuse()
+        private long digest;
+        private long[] parts;
+        private final List<String> usedIds = new ArrayList<>();
+
+        private Generation(Map<String, Entry<T>> previousEntries, Map<String, String> previousIds) {
+            this.previousEntries = previousEntries;
+            this.previousIds = previousIds;
+        }
+
+        /**
+         * Returns what the same entity converted to last poll, or null if it is
+         * new or has changed. Must be called for every entity before it is
+         * converted or recorded.
+         */
+        T reuse(FeedEntity entity) {
+            usedIds.clear();
+            parts = null;
+            digest = digest(entity);
+            Entry<T> previous = previousEntries.get(entity.getId());
+            return previous != null && previous.digest == digest ? previous.value : null;
+        }
+
+        /**
+         * What the entity with the same id converted to last poll, or null.
+         */
+        T previousValue(FeedEntity entity) {
+            Entry<T> previous = previousEntries.get(entity.getId());
+            return previous == null ? null : previous.value;
+        }
+
+        /**
+         * The part digests recorded for the entity with the same id last poll,
+         * empty if there were none.
+         */
+        long[] previousParts(FeedEntity entity) {
+            Entry<T> previous = previousEntries.get(entity.getId());
+            return previous == null ? NO_PARTS : previous.parts;
+        }
+
+        /**
+         * Records digests of parts of the entity being converted (a trip's stop
+         * time updates), so next poll can reuse the parts that did not change.
+         */
+        void parts(long[] parts) {
+            this.parts = parts;
+        }
+
+        /**
+         * A 64-bit FNV-1a digest of the message's wire form. Allocates nothing;
+         * the message is serialized through a reused buffer.
+         */
+        long digest(MessageLite message) {
+            digestOut.reset();
+            try {
+                message.writeTo(coded);
+                coded.flush();
+            } catch (IOException e) {
+                // DigestOutputStream never throws
+                throw new UncheckedIOException(e);
+            }
+            return digestOut.hash;
+        }
+
+        void record(FeedEntity entity, T value) {
+            // Entity ids are required by the spec; without one there is nothing to match on
+            if (entity.getId().isEmpty()) {
+                usedIds.clear();
+                return;
+            }
+
+            // A reused value, or the parts of a changed one reused from last poll,
+            // holds ids that were not looked up this poll; keep them interned too
+            Entry<T> previous = previousEntries.get(entity.getId());
+            if (previous != null) {
+                for (String rawId : previous.rawIds) {
+                    String id = previousIds.get(rawId);
+                    if (id != null) {
+                        ids.putIfAbsent(rawId, id);
+                    }
+                    usedIds.add(rawId);
+                }
+            }
+            long[] recordedParts = parts != null ? parts
+                    : previous != null && previous.value == value ? previous.parts : NO_PARTS;
+            String[] rawIds = usedIds.stream().distinct().toArray(String[]::new);
+            entries.put(entity.getId(), new Entry<>(digest, recordedParts, value, rawIds));
+            usedIds.clear();
+            parts = null;
+        }
+
+        /**
+         * The id to hand to clients for a raw feed id. The first time an id is
+         * seen it is namespaced and looked up with staticId, which returns the
+         * static catalog's String for it (or null for ids the catalog doesn't
+         * have); later polls reuse the String from the previous one.
+         */
+        String id(RealtimeFeed feed, String rawId, UnaryOperator<String> staticId) {
+            usedIds.add(rawId);
+            String id = ids.get(rawId);
+            if (id == null) {
+                id = previousIds.get(rawId);
+                if (id == null) {
+                    String namespaced = feed.namespaced(rawId);
+                    String canonical = namespaced == null ? null : staticId.apply(namespaced);
+                    id = canonical != null ? canonical : namespaced;
+                }
+                ids.put(rawId, id);
+            }
+            return id;
+        }
+    }
+
+    private static final class Entry<T> {
+        final long digest;
+        final long[] parts;
+        final T value;
+        // Raw ids the value refers to
+        final String[] rawIds;
+
+        Entry(long digest, long[] parts, T value, String[] rawIds) {
+            this.digest = digest;
+            this.parts = parts;
+            this.value = value;
+            this.rawIds = rawIds;
+        }
+    }
+
+    private static final class DigestOutputStream extends OutputStream {
+
+        private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long PRIME = 0x100000001b3L;
+
+        long hash = OFFSET_BASIS;
+
+        void reset() {
+            hash = OFFSET_BASIS;
+        }
+
+        @Override
+        public void write(int b) {
+            hash = (hash ^ (b & 0xff)) * PRIME;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            long h = hash;
+            for (int i = off; i < off + len; i++) {
+                h = (h ^ (b[i] & 0xff)) * PRIME;
+            }
+            hash = h;
+        }
+    }
+}
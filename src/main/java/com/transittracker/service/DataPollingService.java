@@ -1,44 +1,190 @@
 package com.transittracker.service;
 
+import com.transittracker.config.GtfsConfig;
+import com.transittracker.config.RealtimeFeed;
+import com.transittracker.exception.DataFetchException;
+import com.transittracker.model.Trip;
+import com.transittracker.model.VehiclePosition;
 import com.transittracker.repository.TransitRepository;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Supplier;
+
 @Service
 public class DataPollingService {
 
     private static final Logger logger = LoggerFactory.getLogger(DataPollingService.class);
 
+    private final GtfsConfig gtfsConfig;
     private final GtfsRealtimeService gtfsRealtimeService;
     private final TransitRepository transitRepository;
+    private final TaskScheduler taskScheduler;
+
+    private final List<FeedPoller> pollers = new ArrayList<>();
 
-    public DataPollingService(GtfsRealtimeService gtfsRealtimeService, TransitRepository transitRepository) {
+    public DataPollingService(GtfsConfig gtfsConfig, GtfsRealtimeService gtfsRealtimeService,
+            TransitRepository transitRepository, TaskScheduler taskScheduler) {
+        this.gtfsConfig = gtfsConfig;
         this.gtfsRealtimeService = gtfsRealtimeService;
         this.transitRepository = transitRepository;
+        this.taskScheduler = taskScheduler;
+    }
+
+    /**
+     * Starts an independently scheduled poller for every configured endpoint.
+     * Started once the application is ready, i.e. after the static GTFS data has
+     * been loaded, so the first poll is already enriched.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void startPolling() {
+        for (RealtimeFeed feed : gtfsConfig.getRealtimeFeeds()) {
+            if (feed.getTripUpdatesUrl() != null) {
+                pollers.add(new FeedPoller("trip updates for " + feedName(feed), feed,
+                        () -> pollTripUpdates(feed)));
+            }
+            if (feed.getVehiclePositionsUrl() != null) {
+                pollers.add(new FeedPoller("vehicle positions for " + feedName(feed), feed,
+                        () -> pollVehiclePositions(feed)));
+            }
+        }
+        pollers.forEach(FeedPoller::start);
+    }
+
+    @PreDestroy
+    public synchronized void stopPolling() {
+        pollers.forEach(FeedPoller::stop);
+        pollers.clear();
+    }
+
+    /**
+     * Fetches one feed's trip updates and stores them under the feed's agency if
+     * they changed.
+     */
+    public CompletableFuture<FeedFetchResult<Trip>> pollTripUpdates(RealtimeFeed feed) {
+        return gtfsRealtimeService.fetchTripUpdatesAsync(feed)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        logger.error("Error fetching trip updates for {}", feedName(feed), unwrap(e));
+                    } else if (result.isModified()) {
+                        transitRepository.updateTrips(feed.getAgency(), result.getEntities());
+                        // Only now that they are stored may the next poll treat them as seen
+                        result.commit();
+                        logger.info("Fetched and stored {} trip updates for {}",
+                                result.getEntities().size(), feedName(feed));
+                    } else {
+                        // Nothing new: leave the repository alone so subscribers aren't woken up
+                        result.commit();
+                        logger.info("Trip updates for {} unchanged since last poll", feedName(feed));
+                    }
+                });
     }
 
-    @Scheduled(fixedRate = 30_000, initialDelay = 5_000)
-    public void pollGtfsData() {
-        logger.info("Polling GTFS Realtime data...");
+    /**
+     * Fetches one feed's vehicle positions and stores them under the feed's
+     * agency if they changed.
+     */
+    public CompletableFuture<FeedFetchResult<VehiclePosition>> pollVehiclePositions(RealtimeFeed feed) {
+        return gtfsRealtimeService.fetchVehiclePositionsAsync(feed)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        logger.error("Error fetching vehicle positions for {}", feedName(feed), unwrap(e));
+                    } else if (result.isModified()) {
+                        transitRepository.updateVehiclePositions(feed.getAgency(), result.getEntities());
+                        result.commit();
+                        logger.info("Fetched and stored {} vehicle positions for {}",
+                                result.getEntities().size(), feedName(feed));
+                    } else {
+                        result.commit();
+                        logger.info("Vehicle positions for {} unchanged since last poll", feedName(feed));
+                    }
+                });
+    }
+
+    private static String feedName(RealtimeFeed feed) {
+        return feed.getAgency().isEmpty() ? "default feed" : feed.getAgency();
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * Polls one endpoint and schedules the next poll only once this one has
+     * finished, so polls of the same endpoint never overlap. Fetches run off the
+     * scheduler thread, so one slow endpoint cannot delay the others.
+     */
+    private final class FeedPoller {
+        private final String name;
+        private final RealtimeFeed feed;
+        private final Supplier<CompletableFuture<? extends FeedFetchResult<?>>> poll;
+        private final AdaptivePollSchedule schedule;
+
+        private ScheduledFuture<?> next;
+        private boolean stopped;
+
+        private FeedPoller(String name, RealtimeFeed feed,
+                Supplier<CompletableFuture<? extends FeedFetchResult<?>>> poll) {
+            this.name = name;
+            this.feed = feed;
+            this.poll = poll;
+            this.schedule = new AdaptivePollSchedule(feed.getPollInterval(), feed.getMinPollInterval(),
+                    feed.getMaxPollInterval(), feed.getPollJitter(), feed.isAdaptivePolling(),
+                    new Random());
+        }
+
+        private synchronized void start() {
+            logger.info("Polling {} every {}s{}", name, feed.getPollInterval().toSeconds(),
+                    feed.isAdaptivePolling() ? " until its publish interval is learned" : "");
+            next = taskScheduler.schedule(this::run, Instant.now());
+        }
+
+        private synchronized void stop() {
+            stopped = true;
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+
+        private void run() {
+            CompletableFuture<? extends FeedFetchResult<?>> result;
+            try {
+                result = poll.get();
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
 
-        // Poll trip updates
-        try {
-            var trips = gtfsRealtimeService.fetchTripUpdates();
-            transitRepository.updateTrips(trips);
-            logger.info("Fetched and stored {} trip updates", trips.size());
-        } catch (Exception e) {
-            logger.error("Error fetching trip updates", e);
+            result.whenComplete((fetched, e) -> {
+                if (e == null) {
+                    schedule.recordSuccess(fetched.getHeaderTimestamp(), Instant.now());
+                } else if (unwrap(e) instanceof DataFetchException) {
+                    schedule.recordFailure();
+                }
+                scheduleNext();
+            });
         }
 
-        // Poll vehicle positions
-        try {
-            var positions = gtfsRealtimeService.fetchVehiclePositions();
-            transitRepository.updateVehiclePositions(positions);
-            logger.info("Fetched and stored {} vehicle positions", positions.size());
-        } catch (Exception e) {
-            logger.error("Error fetching vehicle positions", e);
+        private synchronized void scheduleNext() {
+            if (stopped) {
+                return;
+            }
+            Duration delay = schedule.nextDelay(Instant.now());
+            logger.debug("Next poll of {} in {} ms (learned publish interval: {})",
+                    name, delay.toMillis(), schedule.estimatedPublishInterval());
+            next = taskScheduler.schedule(this::run, Instant.now().plus(delay));
         }
     }
 }
@@ -0,0 +1,70 @@
+package com.transittracker.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of polling one realtime feed. When the feed has not changed since the
+ * previous poll the entities are empty and callers should keep what they have.
+ *
+ * <p>
+ * What the poll learned about the feed (validators, fingerprints, converted
+ * entities) is only remembered once the caller has stored the result and calls
+ * {@link #commit()}; otherwise the next poll starts from the previous state.
+ */
+public class FeedFetchResult<T> {
+
+    private static final Runnable NOTHING_TO_COMMIT = () -> {
+    };
+
+    private final boolean modified;
+    private final List<T> entities;
+    private final long headerTimestamp;
+    private final Runnable commit;
+
+    private FeedFetchResult(boolean modified, List<T> entities, long headerTimestamp, Runnable commit) {
+        this.modified = modified;
+        this.entities = entities;
+        this.headerTimestamp = headerTimestamp;
+        this.commit = commit;
+    }
+
+    public static <T> FeedFetchResult<T> updated(List<T> entities, long headerTimestamp) {
+        return updated(entities, headerTimestamp, NOTHING_TO_COMMIT);
+    }
+
+    public static <T> FeedFetchResult<T> updated(List<T> entities, long headerTimestamp, Runnable commit) {
+        return new FeedFetchResult<>(true, entities, headerTimestamp, commit);
+    }
+
+    public static <T> FeedFetchResult<T> unchanged(long headerTimestamp) {
+        return unchanged(headerTimestamp, NOTHING_TO_COMMIT);
+    }
+
+    public static <T> FeedFetchResult<T> unchanged(long headerTimestamp, Runnable commit) {
+        return new FeedFetchResult<>(false, Collections.emptyList(), headerTimestamp, commit);
+    }
+
+    /**
+     * Records this poll as the feed's latest. Call only after the entities have
+     * been stored, or after deciding an unchanged result needs no storing.
+     */
+    public void commit() {
+        commit.run();
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    public List<T> getEntities() {
+        return entities;
+    }
+
+    /**
+     * The feed's FeedHeader.timestamp in POSIX seconds, or 0 if it is unknown.
+     */
+    public long getHeaderTimestamp() {
+        return headerTimestamp;
+    }
+}
@@ -0,0 +1,61 @@
+package com.transittracker.service;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.WireFormat;
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Decodes a GTFS Realtime FeedMessage field by field straight from a stream,
+ * handing each FeedEntity to the caller as soon as it is read. Unlike
+ * FeedMessage.parseFrom, neither the raw body nor the full message is ever
+ * held in memory.
+ *
+ * <p>
+ * The header is always serialized before the entities, so a caller can look
+ * at it and stop reading before any entity is decoded.
+ */
+final class FeedMessageStreamReader {
+
+    private FeedMessageStreamReader() {
+    }
+
+    /**
+     * Reads the message, returning false if onHeader asked to stop early and true
+     * if the whole message was consumed.
+     */
+    static boolean read(InputStream in, Predicate<FeedHeader> onHeader, Consumer<FeedEntity> onEntity)
+            throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(in);
+        ExtensionRegistryLite registry = ExtensionRegistryLite.getEmptyRegistry();
+
+        while (true) {
+            int tag = input.readTag();
+            if (tag == 0) {
+                return true;
+            }
+
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case FeedMessage.HEADER_FIELD_NUMBER -> {
+                    if (!onHeader.test(input.readMessage(FeedHeader.parser(), registry))) {
+                        return false;
+                    }
+                }
+                case FeedMessage.ENTITY_FIELD_NUMBER -> onEntity.accept(input.readMessage(FeedEntity.parser(), registry));
+                default -> {
+                    // Extensions and unknown fields are not used
+                    if (!input.skipField(tag)) {
+                        return true;
+                    }
+                }
+            }
+        }
+    }
+}
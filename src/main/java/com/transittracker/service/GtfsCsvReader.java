@@ -0,0 +1,158 @@
+package com.transittracker.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming reader for GTFS CSV files. Rows are read one at a time into a
+ * reused field array, so memory use is bounded by the longest row rather than
+ * the file size. Handles quoted fields (including embedded commas, escaped
+ * quotes and line breaks), CRLF or LF line endings, blank lines and a leading
+ * UTF-8 byte order mark.
+ *
+ * <p>
+ * Field values returned by {@link #get(int)} are only valid until the next
+ * call to {@link #next()}.
+ */
+final class GtfsCsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private final StringBuilder field = new StringBuilder(64);
+    private String[] fields = new String[16];
+    private int fieldCount;
+
+    GtfsCsvReader(InputStream in) throws IOException {
+        this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        if (fill() && buffer[0] == '\uFEFF') {
+            position++;
+        }
+    }
+
+    /**
+     * Advances to the next non-blank row. Returns false at end of input.
+     */
+    boolean next() throws IOException {
+        fieldCount = 0;
+
+        int c;
+        do {
+            c = read();
+        } while (c == '\n' || c == '\r');
+        if (c == -1) {
+            return false;
+        }
+
+        while (true) {
+            field.setLength(0);
+            if (c == '"') {
+                while (true) {
+                    c = read();
+                    if (c == -1) {
+                        // Unterminated quote: keep what we have
+                        break;
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c == '"') {
+                            field.append('"');
+                            continue;
+                        }
+                        break;
+                    }
+                    field.append((char) c);
+                }
+            }
+            // Unquoted text, or anything between a closing quote and the delimiter
+            while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+                field.append((char) c);
+                c = read();
+            }
+            addField();
+
+            if (c == ',') {
+                c = read();
+                continue;
+            }
+            if (c == '\r' && peek() == '\n') {
+                read();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Number of fields in the current row.
+     */
+    int size() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns the field at index, or null if the row has no such column (or the
+     * index is negative, as returned by indexOf for a missing header).
+     */
+    String get(int index) {
+        return index >= 0 && index < fieldCount ? fields[index] : null;
+    }
+
+    /**
+     * Position of a column name in the current row, which is expected to be the
+     * header. Returns -1 if absent.
+     */
+    int indexOf(String column) {
+        for (int i = 0; i < fieldCount; i++) {
+            if (fields[i].trim().equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void addField() {
+        if (fieldCount == fields.length) {
+            String[] grown = new String[fields.length * 2];
+            System.arraycopy(fields, 0, grown, 0, fields.length);
+            fields = grown;
+        }
+        fields[fieldCount++] = field.toString();
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
@@ -1,189 +1,431 @@
 package com.transittracker.service;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.transit.realtime.GtfsRealtime.FeedEntity;
-import com.google.transit.realtime.GtfsRealtime.FeedMessage;
-import com.transittracker.config.GtfsConfig;
+import com.transittracker.cache.CompactStringMap;
+import com.transittracker.cache.OverlayStringMap;
+import com.transittracker.config.RealtimeFeed;
+import com.transittracker.entity.GtfsRoute;
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.entity.GtfsTrip;
 import com.transittracker.exception.DataFetchException;
 import com.transittracker.exception.ProtobufParseException;
 import com.transittracker.model.*;
-import com.transittracker.repository.GtfsRouteRepository;
-import com.transittracker.repository.GtfsStopRepository;
-import com.transittracker.repository.GtfsTripRepository;
+import com.transittracker.repository.GtfsStaticCatalog;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
 
 @Service
 public class GtfsRealtimeService {
 
     private static final Logger logger = LoggerFactory.getLogger(GtfsRealtimeService.class);
 
-    private final GtfsConfig gtfsConfig;
     private final HttpClient httpClient;
-    private final GtfsRouteRepository routeRepository;
-    private final GtfsStopRepository stopRepository;
-    private final GtfsTripRepository tripRepository;
-
-    // Volatile ensures the polling thread always sees the latest cache built by
-    // refreshCaches()
-    private volatile Map<String, String> routeNameCache = new HashMap<>();
-    private volatile Map<String, String> stopNameCache = new HashMap<>();
-    private volatile Map<String, String> tripHeadsignCache = new HashMap<>();
-
-    public GtfsRealtimeService(GtfsConfig gtfsConfig, HttpClient httpClient,
-            GtfsRouteRepository routeRepository,
-            GtfsStopRepository stopRepository,
-            GtfsTripRepository tripRepository) {
-        this.gtfsConfig = gtfsConfig;
+    private final GtfsStaticCatalog staticCatalog;
+
+    // All three caches are replaced together with a single volatile write, so a
+    // conversion never mixes names from two refreshes
+    private volatile NameCaches nameCaches = NameCaches.EMPTY;
+
+    // Validators and fingerprints from the last successful poll of each feed URL
+    private final Map<String, FeedState> feedStates = new ConcurrentHashMap<>();
+    // Digests of last poll's entities and their converted objects per feed URL, for reuse
+    private final Map<String, ConversionCache<?>> conversionCaches = new ConcurrentHashMap<>();
+
+    // Catalog lookups for interning realtime ids, created once rather than per call
+    private final UnaryOperator<String> staticRouteId = this::staticRouteId;
+    private final UnaryOperator<String> staticStopId = this::staticStopId;
+    private final UnaryOperator<String> staticTripId = this::staticTripId;
+    private static final UnaryOperator<String> NOT_STATIC = id -> null;
+
+    // Feed decoding blocks on the HTTP body, so each fetch gets a cheap virtual
+    // thread rather than tying up a platform thread per feed
+    private final ExecutorService conversionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public GtfsRealtimeService(HttpClient httpClient,
+            GtfsStaticCatalog staticCatalog) {
         this.httpClient = httpClient;
-        this.routeRepository = routeRepository;
-        this.stopRepository = stopRepository;
-        this.tripRepository = tripRepository;
+        this.staticCatalog = staticCatalog;
     }
 
-    public void refreshCaches() {
-        routeNameCache = new HashMap<>();
-        routeRepository.findAll().forEach(route -> {
-            String name = route.getRouteShortName() != null ? route.getRouteShortName()
-                    : route.getRouteLongName() != null ? route.getRouteLongName() : route.getRouteId();
-            routeNameCache.put(route.getRouteId(), name);
-        });
+    @PreDestroy
+    public void shutdown() {
+        conversionExecutor.shutdownNow();
+    }
 
-        stopNameCache = new HashMap<>();
-        stopRepository.findAll().forEach(stop -> {
-            stopNameCache.put(stop.getStopId(), stop.getStopName() != null ? stop.getStopName() : stop.getStopId());
-        });
+    /**
+     * Rebuilds the name caches from the static catalog. The new caches are built
+     * completely before being published.
+     */
+    public synchronized void refreshCaches() {
+        CompactStringMap.Builder routeNames = new CompactStringMap.Builder();
+        staticCatalog.routes().forEach(route -> routeNames.put(route.getRouteId(), routeName(route)));
+
+        CompactStringMap.Builder stopNames = new CompactStringMap.Builder();
+        staticCatalog.stops().forEach(stop -> stopNames.put(stop.getStopId(), stopName(stop)));
+
+        // Null headsigns are skipped by the builder
+        CompactStringMap.Builder tripHeadsigns = new CompactStringMap.Builder();
+        staticCatalog.trips().forEach(trip -> tripHeadsigns.put(trip.getTripId(), trip.getTripHeadsign()));
+
+        nameCaches = new NameCaches(OverlayStringMap.of(routeNames.build()), OverlayStringMap.of(stopNames.build()),
+                OverlayStringMap.of(tripHeadsigns.build()));
+
+        // Names may have changed, so the next poll must re-convert even an
+        // unchanged feed
+        feedStates.clear();
+        conversionCaches.clear();
+
+        NameCaches caches = nameCaches;
+        logger.info("Refreshed GTFS caches: {} routes, {} stops, {} trips ({} distinct headsigns), ~{} KiB",
+                caches.routeNames.size(), caches.stopNames.size(), caches.tripHeadsigns.size(),
+                caches.tripHeadsigns.distinctValues(), caches.estimatedBytes() / 1024);
+    }
 
-        tripHeadsignCache = new HashMap<>();
-        tripRepository.findAll().forEach(trip -> {
-            if (trip.getTripHeadsign() != null) {
-                tripHeadsignCache.put(trip.getTripId(), trip.getTripHeadsign());
-            }
-        });
+    /**
+     * Starts collecting name changes to apply with {@link #applyCacheUpdate}
+     * instead of a full {@link #refreshCaches}.
+     */
+    public NameCacheUpdate newCacheUpdate() {
+        NameCaches caches = nameCaches;
+        return new NameCacheUpdate(caches.routeNames, caches.stopNames, caches.tripHeadsigns);
+    }
 
-        logger.info("Refreshed GTFS caches: {} routes, {} stops, {} trips",
-                routeNameCache.size(), stopNameCache.size(), tripHeadsignCache.size());
+    /**
+     * Applies the changed names on top of the current caches and publishes the
+     * result. Costs time proportional to the number of changes (plus an
+     * occasional compaction), not to the size of the static data.
+     */
+    public synchronized void applyCacheUpdate(NameCacheUpdate update) {
+        if (update.isEmpty())
+            return;
+
+        NameCaches caches = nameCaches;
+        nameCaches = new NameCaches(caches.routeNames.with(update.getRouteNames()),
+                caches.stopNames.with(update.getStopNames()),
+                caches.tripHeadsigns.with(update.getTripHeadsigns()));
+        feedStates.clear();
+        conversionCaches.clear();
+
+        logger.info("Applied {} GTFS name changes", update.size());
     }
 
-    public List<Trip> fetchTripUpdates() {
-        byte[] data = fetchProtobufData(gtfsConfig.getTripUpdatesUrl());
-        return parseTripUpdates(data);
+    /**
+     * Approximate heap used by the static name caches.
+     */
+    public long getCacheFootprintBytes() {
+        return nameCaches.estimatedBytes();
     }
 
-    public List<VehiclePosition> fetchVehiclePositions() {
-        byte[] data = fetchProtobufData(gtfsConfig.getVehiclePositionsUrl());
-        return parseVehiclePositions(data);
+    static String routeName(GtfsRoute route) {
+        return route.getRouteShortName() != null ? route.getRouteShortName()
+                : route.getRouteLongName() != null ? route.getRouteLongName() : route.getRouteId();
     }
 
-    private byte[] fetchProtobufData(String url) {
+    static String stopName(GtfsStop stop) {
+        return stop.getStopName() != null ? stop.getStopName() : stop.getStopId();
+    }
+
+    // The catalog's String for an id, or null if it has none
+    private String staticRouteId(String routeId) {
+        GtfsRoute route = staticCatalog.route(routeId);
+        return route == null ? null : route.getRouteId();
+    }
+
+    private String staticStopId(String stopId) {
+        GtfsStop stop = staticCatalog.stop(stopId);
+        return stop == null ? null : stop.getStopId();
+    }
+
+    private String staticTripId(String tripId) {
+        GtfsTrip trip = staticCatalog.trip(tripId);
+        return trip == null ? null : trip.getTripId();
+    }
+
+    public CompletableFuture<FeedFetchResult<Trip>> fetchTripUpdatesAsync(RealtimeFeed feed) {
+        return fetchFeedAsync(feed.getTripUpdatesUrl(), feed.getTimeout(), "trip updates",
+                (entity, generation) -> entity.hasTripUpdate() ? convertToTrip(entity, feed, generation) : null);
+    }
+
+    public CompletableFuture<FeedFetchResult<VehiclePosition>> fetchVehiclePositionsAsync(RealtimeFeed feed) {
+        return fetchFeedAsync(feed.getVehiclePositionsUrl(), feed.getTimeout(), "vehicle positions",
+                (entity, generation) -> entity.hasVehicle()
+                        ? convertToVehiclePosition(entity, feed, generation)
+                        : null);
+    }
+
+    /**
+     * Fetches and converts one feed without blocking the caller. The whole
+     * fetch, including decoding, is bounded by the feed's timeout; failures
+     * complete the future with a DataFetchException or ProtobufParseException.
+     */
+    private <T> CompletableFuture<FeedFetchResult<T>> fetchFeedAsync(String url, Duration timeout,
+            String description, BiFunction<FeedEntity, ConversionCache.Generation<T>, T> converter) {
+        FeedState previous = feedStates.getOrDefault(url, FeedState.INITIAL);
+
+        HttpRequest request;
         try {
-            HttpRequest request = HttpRequest.newBuilder()
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
                     .uri(URI.create(url))
-                    .build();
-
-            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                    .timeout(timeout);
+            // Validators from the previous poll let the server answer 304 Not Modified
+            if (previous.etag != null) {
+                builder.header("If-None-Match", previous.etag);
+            }
+            if (previous.lastModified != null) {
+                builder.header("If-Modified-Since", previous.lastModified);
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(
+                    new DataFetchException("Invalid GTFS Realtime feed URL: " + url, e));
+        }
 
-            if (response.statusCode() != 200) {
-                throw new DataFetchException(
-                        "Failed to fetch data from " + url + ". Status code: " + response.statusCode());
+        CompletableFuture<HttpResponse<InputStream>> sent = httpClient.sendAsync(request,
+                HttpResponse.BodyHandlers.ofInputStream());
+        CompletableFuture<FeedFetchResult<T>> fetch = new CompletableFuture<>();
+        sent.whenComplete((response, e) -> {
+            if (e != null) {
+                fetch.completeExceptionally(e);
+                return;
             }
+            // Decoding blocks on the body stream, so it gets its own virtual thread
+            Future<?> task;
+            try {
+                task = conversionExecutor.submit(() -> {
+                    try {
+                        fetch.complete(readFeed(url, description, converter, previous, response));
+                    } catch (RuntimeException ex) {
+                        fetch.completeExceptionally(ex);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                closeQuietly(response.body());
+                fetch.completeExceptionally(ex);
+                return;
+            }
+            // A fetch that failed or timed out must not keep reading alongside the
+            // next poll: interrupt the decode and close the body it is blocked on
+            fetch.whenComplete((result, ex) -> {
+                if (ex != null) {
+                    task.cancel(true);
+                    closeQuietly(response.body());
+                }
+            });
+        });
 
-            return response.body();
-        } catch (DataFetchException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new DataFetchException("Error fetching GTFS Realtime data from " + url, e);
-        }
+        return fetch
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        sent.cancel(true);
+                    }
+                })
+                .exceptionally(e -> {
+                    throw asFetchException(url, e);
+                });
     }
 
-    private List<Trip> parseTripUpdates(byte[] data) {
-        try {
-            FeedMessage feedMessage = FeedMessage.parseFrom(data);
-            List<Trip> trips = new ArrayList<>();
+    /**
+     * Decodes a feed response, short-circuiting when it has not changed since
+     * the last successful poll: a 304 has no body to read, an unchanged header
+     * timestamp stops before any entity is converted, and an identical body hash
+     * discards the result instead of republishing it. The feed's new state is
+     * only saved when the caller commits the result.
+     */
+    private <T> FeedFetchResult<T> readFeed(String url, String description,
+            BiFunction<FeedEntity, ConversionCache.Generation<T>, T> converter,
+            FeedState previous, HttpResponse<InputStream> response) {
+        if (response.statusCode() == 304) {
+            closeQuietly(response.body());
+            return FeedFetchResult.unchanged(previous.headerTimestamp);
+        }
+        if (response.statusCode() != 200) {
+            closeQuietly(response.body());
+            throw new DataFetchException(
+                    "Failed to fetch data from " + url + ". Status code: " + response.statusCode());
+        }
 
-            for (FeedEntity entity : feedMessage.getEntityList()) {
-                if (entity.hasTripUpdate()) {
-                    trips.add(convertToTrip(entity));
+        MessageDigest digest = newBodyDigest();
+        ConversionCache<T> conversionCache = conversionCache(url);
+        ConversionCache.Generation<T> generation = conversionCache.next();
+        List<T> entities = new ArrayList<>();
+        long[] headerTimestamp = { 0 };
+        boolean complete;
+
+        try (InputStream body = new DigestInputStream(response.body(), digest)) {
+            complete = FeedMessageStreamReader.read(body, header -> {
+                headerTimestamp[0] = header.getTimestamp();
+                // Producers bump the timestamp on every publish, so an identical one
+                // means we already have this feed
+                return headerTimestamp[0] == 0 || headerTimestamp[0] != previous.headerTimestamp;
+            }, entity -> {
+                // An entity identical to last poll's maps to the same object
+                T converted = generation.reuse(entity);
+                if (converted == null) {
+                    converted = converter.apply(entity, generation);
+                }
+                if (converted != null) {
+                    generation.record(entity, converted);
+                    entities.add(converted);
                 }
+            });
+        } catch (InvalidProtocolBufferException e) {
+            throw new ProtobufParseException("Error parsing " + description + " protobuf data", e);
+        } catch (IOException e) {
+            throw new DataFetchException("Error reading GTFS Realtime data from " + url, e);
+        }
+
+        byte[] bodyHash = complete ? digest.digest() : previous.bodyHash;
+        FeedState state = new FeedState(
+                response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null),
+                bodyHash, headerTimestamp[0]);
+        Runnable commit = commitAction(url, state, complete ? () -> conversionCache.commit(generation) : null);
+
+        if (!complete || Arrays.equals(bodyHash, previous.bodyHash)) {
+            logger.debug("{} unchanged since last poll, skipping", description);
+            return FeedFetchResult.unchanged(headerTimestamp[0], commit);
+        }
+        return FeedFetchResult.updated(entities, headerTimestamp[0], commit);
+    }
+
+    /**
+     * Saves a feed's state once its result has been stored. Skipped if the name
+     * caches were replaced in the meantime, since they clear the state so the
+     * next poll converts with the new names.
+     */
+    private Runnable commitAction(String url, FeedState state, Runnable commitConversions) {
+        NameCaches caches = nameCaches;
+        return () -> {
+            synchronized (this) {
+                if (nameCaches != caches) {
+                    return;
+                }
+                if (commitConversions != null) {
+                    commitConversions.run();
+                }
+                feedStates.put(url, state);
             }
+        };
+    }
 
-            return trips;
-        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-            throw new ProtobufParseException("Error parsing trip updates protobuf data", e);
+    @SuppressWarnings("unchecked")
+    private <T> ConversionCache<T> conversionCache(String url) {
+        return (ConversionCache<T>) conversionCaches.computeIfAbsent(url, u -> new ConversionCache<>());
+    }
+
+    private static RuntimeException asFetchException(String url, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof DataFetchException || cause instanceof ProtobufParseException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException) {
+            return new DataFetchException("Timed out fetching GTFS Realtime data from " + url, cause);
         }
+        return new DataFetchException("Error fetching GTFS Realtime data from " + url, cause);
     }
 
-    private List<VehiclePosition> parseVehiclePositions(byte[] data) {
+    private static void closeQuietly(InputStream body) {
         try {
-            FeedMessage feedMessage = FeedMessage.parseFrom(data);
-            List<VehiclePosition> positions = new ArrayList<>();
-
-            for (FeedEntity entity : feedMessage.getEntityList()) {
-                if (entity.hasVehicle()) {
-                    var v = entity.getVehicle();
-                    VehiclePosition position = new VehiclePosition();
-
-                    if (v.hasVehicle()) {
-                        position.setVehicleId(v.getVehicle().getId());
-                        if (v.getVehicle().hasLabel()) {
-                            position.setLabel(v.getVehicle().getLabel());
-                        }
-                    }
-
-                    if (v.hasPosition()) {
-                        position.setLatitude((double) v.getPosition().getLatitude());
-                        position.setLongitude((double) v.getPosition().getLongitude());
-                        if (v.getPosition().hasBearing()) {
-                            position.setBearing(v.getPosition().getBearing());
-                        }
-                        if (v.getPosition().hasSpeed()) {
-                            position.setSpeed(v.getPosition().getSpeed());
-                        }
-                    }
+            body.close();
+        } catch (IOException e) {
+            // Nothing useful to do; the connection is discarded either way
+        }
+    }
 
-                    if (v.hasTimestamp()) {
-                        position.setTimestamp(v.getTimestamp());
-                    }
+    private static MessageDigest newBodyDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
 
-                    if (v.hasTrip()) {
-                        position.setTripId(v.getTrip().getTripId());
-                        String routeId = v.getTrip().getRouteId();
-                        position.setRouteId(routeId);
-                        position.setRouteName(routeNameCache.get(routeId));
-                    }
+    // Ids handed to clients carry the feed's agency namespace, as the static
+    // ids of the agency's static feeds do, so names are looked up by them
+    private VehiclePosition convertToVehiclePosition(FeedEntity entity, RealtimeFeed feed,
+            ConversionCache.Generation<VehiclePosition> generation) {
+        var v = entity.getVehicle();
+        VehiclePosition position = new VehiclePosition();
+
+        if (v.hasVehicle()) {
+            position.setVehicleId(generation.id(feed, v.getVehicle().getId(), NOT_STATIC));
+            if (v.getVehicle().hasLabel()) {
+                position.setLabel(v.getVehicle().getLabel());
+            }
+        }
 
-                    positions.add(position);
-                }
+        if (v.hasPosition()) {
+            position.setLatitude((double) v.getPosition().getLatitude());
+            position.setLongitude((double) v.getPosition().getLongitude());
+            if (v.getPosition().hasBearing()) {
+                position.setBearing(v.getPosition().getBearing());
+            }
+            if (v.getPosition().hasSpeed()) {
+                position.setSpeed(v.getPosition().getSpeed());
             }
+        }
+
+        if (v.hasTimestamp()) {
+            position.setTimestamp(v.getTimestamp());
+        }
 
-            return positions;
-        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-            throw new ProtobufParseException("Error parsing vehicle positions protobuf data", e);
+        if (v.hasTrip()) {
+            position.setTripId(generation.id(feed, v.getTrip().getTripId(), staticTripId));
+            position.setRouteId(generation.id(feed, v.getTrip().getRouteId(), staticRouteId));
+            position.setRouteName(nameCaches.routeNames.get(position.getRouteId()));
         }
+
+        return position;
     }
 
-    private Trip convertToTrip(FeedEntity entity) {
+    private Trip convertToTrip(FeedEntity entity, RealtimeFeed feed, ConversionCache.Generation<Trip> generation) {
         var tripUpdate = entity.getTripUpdate();
+        NameCaches caches = nameCaches;
         Trip trip = new Trip();
 
+        // The trip changed since last poll, but usually only at a few stops
+        Trip previousTrip = generation.previousValue(entity);
+        List<StopTimeUpdate> previousUpdates = previousTrip != null ? previousTrip.getStopTimeUpdates() : null;
+        long[] previousParts = previousTrip != null ? generation.previousParts(entity) : null;
+
         if (tripUpdate.hasTrip()) {
             var gtfsTrip = tripUpdate.getTrip();
-            String tripId = gtfsTrip.getTripId();
-            String routeId = gtfsTrip.getRouteId();
-
-            trip.setTripId(tripId);
-            trip.setRouteId(routeId);
-            trip.setRouteName(routeNameCache.get(routeId));
-            trip.setTripHeadsign(tripHeadsignCache.get(tripId));
+            trip.setTripId(generation.id(feed, gtfsTrip.getTripId(), staticTripId));
+            trip.setRouteId(generation.id(feed, gtfsTrip.getRouteId(), staticRouteId));
+            trip.setRouteName(caches.routeNames.get(trip.getRouteId()));
+            trip.setTripHeadsign(caches.tripHeadsigns.get(trip.getTripId()));
 
             if (gtfsTrip.hasScheduleRelationship()) {
                 trip.setScheduleRelationship(gtfsTrip.getScheduleRelationship().toString());
@@ -193,22 +435,36 @@ public class GtfsRealtimeService {
         if (tripUpdate.hasVehicle()) {
             var gtfsVehicle = tripUpdate.getVehicle();
             Vehicle vehicle = new Vehicle();
-            vehicle.setId(gtfsVehicle.getId());
+            vehicle.setId(generation.id(feed, gtfsVehicle.getId(), NOT_STATIC));
             if (gtfsVehicle.hasLabel()) {
                 vehicle.setLabel(gtfsVehicle.getLabel());
             }
             trip.setVehicle(vehicle);
         }
 
-        List<StopTimeUpdate> stopTimeUpdates = new ArrayList<>();
-        for (var gtfsStopUpdate : tripUpdate.getStopTimeUpdateList()) {
+        // Only needed for delays sent without a time, so created on the first one
+        String startDate = tripUpdate.hasTrip() ? tripUpdate.getTrip().getStartDate() : null;
+        ScheduledTimes schedule = null;
+
+        List<StopTimeUpdate> stopTimeUpdates = new ArrayList<>(tripUpdate.getStopTimeUpdateCount());
+        long[] parts = new long[tripUpdate.getStopTimeUpdateCount()];
+        for (int i = 0; i < tripUpdate.getStopTimeUpdateCount(); i++) {
+            var gtfsStopUpdate = tripUpdate.getStopTimeUpdate(i);
+            parts[i] = generation.digest(gtfsStopUpdate);
+            // Each stop update converts to one StopTimeUpdate, so the previous
+            // trip's list lines up with the previous poll's digests
+            if (previousParts != null && i < previousParts.length && i < previousUpdates.size()
+                    && parts[i] == previousParts[i]) {
+                stopTimeUpdates.add(previousUpdates.get(i));
+                continue;
+            }
+
             StopTimeUpdate stopUpdate = new StopTimeUpdate();
             stopUpdate.setStopSequence(gtfsStopUpdate.getStopSequence());
 
             if (gtfsStopUpdate.hasStopId()) {
-                String stopId = gtfsStopUpdate.getStopId();
-                stopUpdate.setStopId(stopId);
-                stopUpdate.setStopName(stopNameCache.get(stopId));
+                stopUpdate.setStopId(generation.id(feed, gtfsStopUpdate.getStopId(), staticStopId));
+                stopUpdate.setStopName(caches.stopNames.get(stopUpdate.getStopId()));
             }
 
             if (gtfsStopUpdate.hasArrival()) {
@@ -218,6 +474,11 @@ public class GtfsRealtimeService {
                 if (arrival.hasDelay()) {
                     arrivalEvent.setDelay((int) arrival.getDelay());
                 }
+                if (arrival.hasDelay() && !arrival.hasTime()) {
+                    schedule = schedule != null ? schedule : scheduledTimes(feed);
+                    arrivalEvent.setTime(schedule.arrival(trip.getTripId(), startDate, stopUpdate.getStopSequence(),
+                            arrivalEvent.getDelay()));
+                }
                 stopUpdate.setArrival(arrivalEvent);
             }
 
@@ -228,13 +489,59 @@ public class GtfsRealtimeService {
                 if (departure.hasDelay()) {
                     departureEvent.setDelay((int) departure.getDelay());
                 }
+                if (departure.hasDelay() && !departure.hasTime()) {
+                    schedule = schedule != null ? schedule : scheduledTimes(feed);
+                    departureEvent.setTime(schedule.departure(trip.getTripId(), startDate, stopUpdate.getStopSequence(),
+                            departureEvent.getDelay()));
+                }
                 stopUpdate.setDeparture(departureEvent);
             }
 
             stopTimeUpdates.add(stopUpdate);
         }
         trip.setStopTimeUpdates(stopTimeUpdates);
+        generation.parts(parts);
 
         return trip;
     }
+
+    private ScheduledTimes scheduledTimes(RealtimeFeed feed) {
+        return new ScheduledTimes(staticCatalog.stopTimes(), feed.getTimezone(),
+                System.currentTimeMillis() / 1000);
+    }
+
+    private static final class FeedState {
+        static final FeedState INITIAL = new FeedState(null, null, null, 0);
+
+        final String etag;
+        final String lastModified;
+        final byte[] bodyHash;
+        final long headerTimestamp;
+
+        FeedState(String etag, String lastModified, byte[] bodyHash, long headerTimestamp) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.bodyHash = bodyHash;
+            this.headerTimestamp = headerTimestamp;
+        }
+    }
+
+    private static final class NameCaches {
+        static final NameCaches EMPTY = new NameCaches(OverlayStringMap.EMPTY, OverlayStringMap.EMPTY,
+                OverlayStringMap.EMPTY);
+
+        final OverlayStringMap routeNames;
+        final OverlayStringMap stopNames;
+        final OverlayStringMap tripHeadsigns;
+
+        NameCaches(OverlayStringMap routeNames, OverlayStringMap stopNames, OverlayStringMap tripHeadsigns) {
+            this.routeNames = routeNames;
+            this.stopNames = stopNames;
+            this.tripHeadsigns = tripHeadsigns;
+        }
+
+        long estimatedBytes() {
+            return routeNames.estimatedBytes() + stopNames.estimatedBytes() + tripHeadsigns.estimatedBytes();
+        }
+    }
 }
@@ -0,0 +1,384 @@
+package com.transittracker.service;
+
+import com.transittracker.config.GtfsConfig;
+import com.transittracker.entity.GtfsRoute;
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.entity.GtfsTrip;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Keeps a local binary copy of the static entities of each feed so a restart
+ * can skip the download and CSV parsing when the upstream zip has not changed.
+ * The ETag and Last-Modified of the response a snapshot was built from are
+ * stored with it and sent back as a conditional request; on a 304 the snapshot
+ * is memory-mapped and replayed into the database. Servers that send no
+ * validators answer with the whole zip, so the SHA-256 of the zip is stored
+ * too and a download with the same hash replays the snapshot instead of being
+ * parsed.
+ *
+ * <p>
+ * File layout (big-endian):
+ *
+ * <pre>
+ * int    magic "GTFS"
+ * int    format version
+ * long   offset of the metadata section
+ * record* one type byte (route, stop, trip or stop time) followed by its fields
+ * byte   end of records
+ * metadata: ETag, Last-Modified, SHA-256 of the zip (hex), written-at millis
+ * </pre>
+ *
+ * Strings are an int byte length (-1 for null) followed by UTF-8; nullable
+ * numbers are a presence byte followed by the value. Files with another magic
+ * or version are ignored and rebuilt on the next download.
+ */
+@Component
+public class GtfsSnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(GtfsSnapshotStore.class);
+
+    private static final int MAGIC = 0x47544653;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte END = 0;
+    private static final byte ROUTE = 1;
+    private static final byte STOP = 2;
+    private static final byte TRIP = 3;
+    private static final byte STOP_TIME = 4;
+
+    private final Path directory;
+
+    public GtfsSnapshotStore(GtfsConfig gtfsConfig) {
+        String dir = gtfsConfig.getStaticSnapshotDir();
+        this.directory = dir == null || dir.isBlank() ? null : Path.of(dir);
+    }
+
+    /**
+     * Reads the validators and content hash of the snapshot for a feed, or
+     * returns null if there is no usable snapshot.
+     */
+    public SnapshotHeader readHeader(String feedUrl) {
+        if (directory == null)
+            return null;
+
+        Path file = fileFor(feedUrl);
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try {
+            ByteBuffer buffer = map(file);
+            long metadataOffset = readPreamble(buffer);
+            if (metadataOffset < 0)
+                return null;
+            buffer.position(Math.toIntExact(metadataOffset));
+            return new SnapshotHeader(readString(buffer), readString(buffer), readString(buffer), buffer.getLong());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable GTFS snapshot {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Replays the snapshot for a feed into the sink. Returns false, having added
+     * nothing, if the snapshot is missing or was written by another format
+     * version.
+     */
+    boolean load(String feedUrl, StaticEntitySink sink) throws IOException, InterruptedException {
+        if (directory == null)
+            return false;
+
+        Path file = fileFor(feedUrl);
+        if (!Files.isRegularFile(file))
+            return false;
+
+        ByteBuffer buffer = map(file);
+        if (readPreamble(buffer) < 0)
+            return false;
+
+        int routes = 0, stops = 0, trips = 0, stopTimes = 0;
+        try {
+            byte type;
+            while ((type = buffer.get()) != END) {
+                switch (type) {
+                    case ROUTE -> {
+                        sink.addRoute(new GtfsRoute(readString(buffer), readString(buffer), readString(buffer),
+                                readInteger(buffer)));
+                        routes++;
+                    }
+                    case STOP -> {
+                        sink.addStop(new GtfsStop(readString(buffer), readString(buffer), readDouble(buffer),
+                                readDouble(buffer)));
+                        stops++;
+                    }
+                    case TRIP -> {
+                        sink.addTrip(new GtfsTrip(readString(buffer), readString(buffer), readString(buffer),
+                                readInteger(buffer)));
+                        trips++;
+                    }
+                    case STOP_TIME -> {
+                        sink.addStopTime(readString(buffer), readString(buffer), buffer.getInt(), buffer.getInt(),
+                                buffer.getInt());
+                        stopTimes++;
+                    }
+                    default -> throw new IOException("Unknown record type " + type + " in " + file);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated GTFS snapshot " + file, e);
+        }
+
+        logger.info("Loaded {} routes, {} stops, {} trips and {} stop times from snapshot {}",
+                routes, stops, trips, stopTimes, file);
+        return true;
+    }
+
+    /**
+     * Starts a new snapshot for a feed, or returns null if snapshots are
+     * disabled. It replaces the current one only when committed.
+     */
+    SnapshotWriter open(String feedUrl, String etag, String lastModified) throws IOException {
+        if (directory == null)
+            return null;
+
+        Files.createDirectories(directory);
+        Path file = fileFor(feedUrl);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        return new SnapshotWriter(file, temp, etag, lastModified);
+    }
+
+    /**
+     * Copies a downloaded zip to a temporary file next to the snapshots, adding
+     * its bytes to the digest, so its hash can be compared with a snapshot's
+     * before it is parsed. The caller deletes the file.
+     */
+    Path spool(InputStream body, MessageDigest digest) throws IOException {
+        Files.createDirectories(directory);
+        Path file = Files.createTempFile(directory, "download", ".zip");
+        try (InputStream in = new DigestInputStream(body, digest)) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private Path fileFor(String feedUrl) {
+        byte[] hash = sha256().digest(feedUrl.getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(HexFormat.of().formatHex(hash, 0, 16) + ".snapshot");
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Checks the magic and format version and returns the metadata offset, or
+     * -1 if the file is not a snapshot this version can read.
+     */
+    private static long readPreamble(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+            return -1;
+        long metadataOffset = buffer.getLong();
+        return metadataOffset >= HEADER_SIZE && metadataOffset < buffer.limit() ? metadataOffset : -1;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Integer readInteger(ByteBuffer buffer) {
+        return buffer.get() == 0 ? null : buffer.getInt();
+    }
+
+    private static Double readDouble(ByteBuffer buffer) {
+        return buffer.get() == 0 ? null : buffer.getDouble();
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Validators and content hash of the response a snapshot was built from.
+     */
+    public static final class SnapshotHeader {
+
+        private final String etag;
+        private final String lastModified;
+        private final String contentHash;
+        private final long writtenAt;
+
+        SnapshotHeader(String etag, String lastModified, String contentHash, long writtenAt) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.writtenAt = writtenAt;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public long getWrittenAt() {
+            return writtenAt;
+        }
+    }
+
+    /**
+     * Appends entities to a temporary file that atomically replaces the feed's
+     * snapshot on {@link #commit}. Closing without committing discards it.
+     */
+    static final class SnapshotWriter implements Closeable {
+
+        private final Path file;
+        private final Path temp;
+        private final String etag;
+        private final String lastModified;
+        private final DataOutputStream out;
+        private boolean committed;
+
+        private SnapshotWriter(Path file, Path temp, String etag, String lastModified) throws IOException {
+            this.file = file;
+            this.temp = temp;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            // Patched with the real offset on commit
+            out.writeLong(0);
+        }
+
+        void writeRoute(GtfsRoute route) throws IOException {
+            out.writeByte(ROUTE);
+            writeString(route.getRouteId());
+            writeString(route.getRouteShortName());
+            writeString(route.getRouteLongName());
+            writeInteger(route.getRouteType());
+        }
+
+        void writeStop(GtfsStop stop) throws IOException {
+            out.writeByte(STOP);
+            writeString(stop.getStopId());
+            writeString(stop.getStopName());
+            writeDouble(stop.getStopLat());
+            writeDouble(stop.getStopLon());
+        }
+
+        void writeTrip(GtfsTrip trip) throws IOException {
+            out.writeByte(TRIP);
+            writeString(trip.getTripId());
+            writeString(trip.getRouteId());
+            writeString(trip.getTripHeadsign());
+            writeInteger(trip.getDirectionId());
+        }
+
+        void writeStopTime(String tripId, String stopId, int stopSequence, int arrivalTime, int departureTime)
+                throws IOException {
+            out.writeByte(STOP_TIME);
+            writeString(tripId);
+            writeString(stopId);
+            out.writeInt(stopSequence);
+            out.writeInt(arrivalTime);
+            out.writeInt(departureTime);
+        }
+
+        /**
+         * Finishes the snapshot and moves it into place.
+         */
+        void commit(String contentHash) throws IOException {
+            out.writeByte(END);
+            long metadataOffset = out.size();
+            writeString(etag);
+            writeString(lastModified);
+            writeString(contentHash);
+            out.writeLong(System.currentTimeMillis());
+            out.close();
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, metadataOffset), 8);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            logger.info("Wrote GTFS snapshot {} ({} bytes)", file, Files.size(file));
+        }
+
+        @Override
+        public void close() {
+            if (committed)
+                return;
+            try {
+                out.close();
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                logger.warn("Failed to discard incomplete GTFS snapshot {}", temp, e);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeInteger(Integer value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null)
+                out.writeInt(value);
+        }
+
+        private void writeDouble(Double value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null)
+                out.writeDouble(value);
+        }
+    }
+}
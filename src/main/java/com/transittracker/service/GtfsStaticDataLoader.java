@@ -4,27 +4,47 @@ import com.transittracker.config.GtfsConfig;
 import com.transittracker.entity.GtfsRoute;
 import com.transittracker.entity.GtfsStop;
 import com.transittracker.entity.GtfsTrip;
-import com.transittracker.repository.GtfsRouteRepository;
-import com.transittracker.repository.GtfsStopRepository;
-import com.transittracker.repository.GtfsTripRepository;
+import com.transittracker.repository.GtfsBulkRepository;
+import com.transittracker.repository.GtfsStaticCatalog;
+import com.transittracker.repository.StopTimesStore;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
-
-import java.io.*;
-import java.nio.file.FileVisitResult;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -35,279 +55,557 @@ public class GtfsStaticDataLoader implements ApplicationRunner {
 
     private final GtfsConfig gtfsConfig;
     private final HttpClient httpClient;
-    private final GtfsRouteRepository routeRepository;
-    private final GtfsStopRepository stopRepository;
-    private final GtfsTripRepository tripRepository;
+    private final GtfsBulkRepository bulkRepository;
     private final GtfsRealtimeService gtfsRealtimeService;
+    private final GtfsStaticCatalog staticCatalog;
+    private final GtfsSnapshotStore snapshotStore;
+    private final int batchSize;
+    private final int loadParallelism;
+    private final Duration reloadInterval;
+    private final TransactionTemplate transactionTemplate;
+
+    // What each feed last loaded, to make reloads conditional and find removed rows
+    private final Map<String, LoadedFeed> loadedFeeds = new ConcurrentHashMap<>();
+    // Held by the startup load and by reloads so they never overlap
+    private final ReentrantLock loadLock = new ReentrantLock();
+    // Reloads get their own thread rather than the scheduler shared with realtime
+    // polling, and run on it directly so the delay counts from when the previous
+    // reload finished
+    private ScheduledExecutorService reloadExecutor;
 
     public GtfsStaticDataLoader(GtfsConfig gtfsConfig, HttpClient httpClient,
-            GtfsRouteRepository routeRepository,
-            GtfsStopRepository stopRepository,
-            GtfsTripRepository tripRepository,
-            GtfsRealtimeService gtfsRealtimeService) {
+            GtfsBulkRepository bulkRepository,
+            GtfsRealtimeService gtfsRealtimeService,
+            GtfsStaticCatalog staticCatalog,
+            GtfsSnapshotStore snapshotStore,
+            PlatformTransactionManager transactionManager) {
         this.gtfsConfig = gtfsConfig;
         this.httpClient = httpClient;
-        this.routeRepository = routeRepository;
-        this.stopRepository = stopRepository;
-        this.tripRepository = tripRepository;
+        this.bulkRepository = bulkRepository;
         this.gtfsRealtimeService = gtfsRealtimeService;
+        this.staticCatalog = staticCatalog;
+        this.snapshotStore = snapshotStore;
+        this.batchSize = gtfsConfig.getStaticBatchSize();
+        this.loadParallelism = Math.max(1, gtfsConfig.getStaticLoadParallelism());
+        this.reloadInterval = gtfsConfig.getStaticReloadInterval();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     @Override
     public void run(ApplicationArguments args) throws Exception {
         logger.info("Loading static GTFS data from {} feed(s)...", gtfsConfig.getStaticGtfsUrls().size());
 
-        for (String feedUrl : gtfsConfig.getStaticGtfsUrls()) {
-            Path tempDir = null;
-            try {
-                byte[] zipData = downloadGtfsZip(feedUrl);
-                tempDir = Files.createTempDirectory("gtfs");
-
-                extractZip(zipData, tempDir);
-
-                // The zip may extract files directly or into a subdirectory (e.g. "GTFS/")
-                Path dataDir = findGtfsDataDir(tempDir);
-
-                loadRoutes(dataDir.resolve("routes.txt"));
-                loadStops(dataDir.resolve("stops.txt"));
-                loadTrips(dataDir.resolve("trips.txt"));
-
-                logger.info("Loaded feed: {}", feedUrl);
-            } catch (Exception e) {
-                logger.warn("Failed to load GTFS feed: {}. Skipping.", feedUrl, e);
-            } finally {
-                if (tempDir != null) {
-                    deleteTempDirectory(tempDir);
+        loadLock.lock();
+        try {
+            // Feeds download and parse on their own threads while parsed batches are
+            // written on a separate pool. Closing the executors waits for every feed
+            // and every write, which is the barrier before the caches are refreshed.
+            Semaphore batchPermits = new Semaphore(loadParallelism * 2);
+            List<String> feedUrls = gtfsConfig.getStaticGtfsUrls();
+            SharedIds sharedIds = new SharedIds();
+            try (ExecutorService writeExecutor = Executors.newFixedThreadPool(loadParallelism);
+                    ExecutorService feedExecutor = Executors.newFixedThreadPool(loadParallelism)) {
+                for (int i = 0; i < feedUrls.size(); i++) {
+                    String feedUrl = feedUrls.get(i);
+                    StaticEntitySink.RowFilter rowFilter = sharedIds.forFeed(i);
+                    feedExecutor.execute(() -> {
+                        BatchWriter writer = new BatchWriter(writeExecutor, batchPermits);
+                        try {
+                            loadedFeeds.put(feedUrl, loadFeed(feedUrl, writer, rowFilter));
+                            logger.info("Loaded feed: {}", feedUrl);
+                        } catch (Exception e) {
+                            logger.warn("Failed to load GTFS feed: {}. Skipping.", feedUrl, e);
+                        }
+                    });
                 }
             }
+            writeSharedIds(sharedIds);
+
+            // Rebuild the catalog once after all feeds are loaded, then the
+            // realtime service caches from it
+            refreshCatalog();
+            gtfsRealtimeService.refreshCaches();
+        } finally {
+            loadLock.unlock();
         }
 
-        // Refresh the realtime service caches once after all feeds are loaded
-        gtfsRealtimeService.refreshCaches();
-
         logger.info("Static GTFS data loading complete");
-    }
 
-    private byte[] downloadGtfsZip(String url) throws IOException, InterruptedException {
-        logger.info("Downloading GTFS zip from {}", url);
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .build();
-
-        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (reloadInterval.isPositive()) {
+            logger.info("Checking static GTFS feeds for changes every {}", reloadInterval);
+            reloadExecutor = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("gtfs-static-reload").daemon().factory());
+            reloadExecutor.scheduleWithFixedDelay(this::reload, reloadInterval.toMillis(),
+                    reloadInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
 
-        if (response.statusCode() != 200) {
-            throw new IOException("Failed to download GTFS zip. Status code: " + response.statusCode());
+    @PreDestroy
+    public void stopReloading() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
         }
+    }
+
+    /**
+     * Writes the rows held back for ids several feeds share, so the feed listed
+     * last wins no matter which feed's batches were written last.
+     */
+    private void writeSharedIds(SharedIds sharedIds) {
+        if (sharedIds.sharedRoutes() == 0 && sharedIds.sharedStops() == 0 && sharedIds.sharedTrips() == 0)
+            return;
 
-        logger.info("Downloaded {} bytes", response.body().length);
-        return response.body();
+        sharedIds.writeHeldRows(bulkRepository, batchSize);
+        logger.warn("{} route, {} stop and {} trip ids appear in more than one feed; "
+                + "keeping the rows of the feed listed last", sharedIds.sharedRoutes(), sharedIds.sharedStops(),
+                sharedIds.sharedTrips());
     }
 
-    private void extractZip(byte[] zipData, Path destDir) throws IOException {
-        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zipData))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                Path filePath = destDir.resolve(entry.getName());
-                if (!entry.isDirectory()) {
-                    Files.createDirectories(filePath.getParent());
-                    Files.copy(zis, filePath);
+    /**
+     * Checks every static feed for changes and applies the ones that changed.
+     * A changed feed is downloaded and parsed first, with no transaction open;
+     * its rows are then merged, and the rows it dropped deleted, in a single
+     * transaction, so queries keep seeing the previous data until it commits and
+     * never a half-loaded feed. The realtime name caches receive only the names
+     * that changed, not a full rebuild.
+     *
+     * <p>
+     * Feeds are reloaded one at a time. At the peak, one feed's parsed routes,
+     * stops and trips wait for the transaction, and its new stop times are held
+     * alongside the live ones until the catalog switches over, so a reload needs
+     * roughly one feed's static data on top of the live data.
+     */
+    void reload() {
+        if (!loadLock.tryLock()) {
+            logger.info("Static GTFS data is already being loaded, skipping this reload");
+            return;
+        }
+        try {
+            for (String feedUrl : gtfsConfig.getStaticGtfsUrls()) {
+                try {
+                    reloadFeed(feedUrl);
+                } catch (Exception e) {
+                    logger.warn("Failed to reload GTFS feed: {}. Keeping the current data.", feedUrl, e);
                 }
-                zis.closeEntry();
             }
+        } finally {
+            loadLock.unlock();
         }
-        logger.info("Extracted GTFS files to {}", destDir);
+    }
+
+    private void reloadFeed(String url) throws IOException, InterruptedException {
+        LoadedFeed previous = loadedFeeds.get(url);
+        HttpResponse<InputStream> response = previous == null
+                ? download(url, null, null)
+                : download(url, previous.etag, previous.lastModified);
+
+        if (response.statusCode() == 304) {
+            response.body().close();
+            logger.debug("GTFS feed {} unchanged", url);
+            return;
+        }
+
+        // Only the names that differ from the caches are collected, and they are
+        // applied once the transaction has committed
+        NameCacheUpdate cacheUpdate = gtfsRealtimeService.newCacheUpdate();
+        // Parsed batches are staged rather than written, so no transaction is
+        // open while the zip downloads
+        List<Runnable> staged = new ArrayList<>();
+        BatchWriter writer = new BatchWriter(staged::add, new Semaphore(Integer.MAX_VALUE));
+        LoadedFeed loaded = parseZip(url, response, writer, cacheUpdate, providedByLaterFeeds(url));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // Writes run on this thread so they join the transaction
+            staged.forEach(Runnable::run);
+            writer.await();
+            deleteRemoved(url, previous, loaded, cacheUpdate);
+        });
+        loadedFeeds.put(url, loaded);
+        gtfsRealtimeService.applyCacheUpdate(cacheUpdate);
+        refreshCatalog();
+        logger.info("Reloaded feed: {}", url);
     }
 
     /**
-     * Finds the directory containing routes.txt — it may be at the root or inside a
-     * subdirectory.
+     * Skips rows whose id a feed listed later in the configuration also
+     * provides, keeping the same precedence as the startup load.
      */
-    private Path findGtfsDataDir(Path tempDir) throws IOException {
-        // Check if routes.txt is at the root
-        if (Files.exists(tempDir.resolve("routes.txt"))) {
-            return tempDir;
-        }
+    private StaticEntitySink.RowFilter providedByLaterFeeds(String url) {
+        List<String> feedUrls = gtfsConfig.getStaticGtfsUrls();
+        List<LoadedFeed> later = feedUrls.subList(feedUrls.indexOf(url) + 1, feedUrls.size()).stream()
+                .map(loadedFeeds::get)
+                .filter(Objects::nonNull)
+                .toList();
+        if (later.isEmpty())
+            return StaticEntitySink.RowFilter.ALL;
+
+        return new StaticEntitySink.RowFilter() {
+            @Override
+            public boolean writeRoute(GtfsRoute route) {
+                return later.stream().noneMatch(feed -> feed.routeIds.contains(route.getRouteId()));
+            }
 
-        // Search one level deep for a subdirectory containing routes.txt
-        try (var stream = Files.list(tempDir)) {
-            return stream
-                    .filter(Files::isDirectory)
-                    .filter(dir -> Files.exists(dir.resolve("routes.txt")))
-                    .findFirst()
-                    .orElseThrow(() -> new IOException("Could not find routes.txt in extracted GTFS zip"));
-        }
+            @Override
+            public boolean writeStop(GtfsStop stop) {
+                return later.stream().noneMatch(feed -> feed.stopIds.contains(stop.getStopId()));
+            }
+
+            @Override
+            public boolean writeTrip(GtfsTrip trip) {
+                return later.stream().noneMatch(feed -> feed.tripIds.contains(trip.getTripId()));
+            }
+        };
     }
 
-    private void loadRoutes(Path routesFile) throws IOException {
-        List<GtfsRoute> routes = new ArrayList<>();
-        List<String[]> rows = parseCsv(routesFile);
+    private void refreshCatalog() {
+        staticCatalog.refresh(loadedFeeds.values().stream().map(feed -> feed.stopTimes).toList());
+    }
 
-        if (rows.isEmpty())
+    /**
+     * Deletes the rows a feed had before a reload but no longer has, unless
+     * another feed still provides them.
+     */
+    private void deleteRemoved(String url, LoadedFeed previous, LoadedFeed loaded, NameCacheUpdate cacheUpdate) {
+        if (previous == null)
             return;
 
-        String[] headers = rows.get(0);
-        int routeIdIdx = indexOf(headers, "route_id");
-        int routeShortNameIdx = indexOf(headers, "route_short_name");
-        int routeLongNameIdx = indexOf(headers, "route_long_name");
-        int routeTypeIdx = indexOf(headers, "route_type");
+        List<String> routeIds = removedIds(url, previous.routeIds, loaded.routeIds, feed -> feed.routeIds);
+        List<String> stopIds = removedIds(url, previous.stopIds, loaded.stopIds, feed -> feed.stopIds);
+        List<String> tripIds = removedIds(url, previous.tripIds, loaded.tripIds, feed -> feed.tripIds);
+        bulkRepository.deleteRoutes(routeIds);
+        bulkRepository.deleteStops(stopIds);
+        bulkRepository.deleteTrips(tripIds);
+        routeIds.forEach(cacheUpdate::removeRoute);
+        stopIds.forEach(cacheUpdate::removeStop);
+        tripIds.forEach(cacheUpdate::removeTrip);
+
+        if (!routeIds.isEmpty() || !stopIds.isEmpty() || !tripIds.isEmpty()) {
+            logger.info("Removed {} routes, {} stops and {} trips no longer in {}",
+                    routeIds.size(), stopIds.size(), tripIds.size(), url);
+        }
+    }
 
-        for (int i = 1; i < rows.size(); i++) {
-            String[] row = rows.get(i);
-            if (row.length <= routeIdIdx)
+    private List<String> removedIds(String url, Set<String> before, Set<String> after,
+            Function<LoadedFeed, Set<String>> ids) {
+        List<String> removed = new ArrayList<>();
+        for (String id : before) {
+            if (after.contains(id))
                 continue;
+            boolean inOtherFeed = loadedFeeds.entrySet().stream()
+                    .anyMatch(e -> !e.getKey().equals(url) && ids.apply(e.getValue()).contains(id));
+            if (!inOtherFeed)
+                removed.add(id);
+        }
+        return removed;
+    }
+
+    /**
+     * Loads one feed into the database. If a snapshot of the feed exists, the
+     * request is conditional on its validators and a 304 replays the snapshot
+     * instead of downloading and parsing the zip again. A full response whose
+     * content hash matches the snapshot's replays it too.
+     */
+    private LoadedFeed loadFeed(String url, BatchWriter writer, StaticEntitySink.RowFilter rowFilter)
+            throws IOException, InterruptedException {
+        try {
+            GtfsSnapshotStore.SnapshotHeader cached = snapshotStore.readHeader(url);
+            HttpResponse<InputStream> response = cached == null
+                    ? download(url, null, null)
+                    : download(url, cached.getEtag(), cached.getLastModified());
+
+            if (response.statusCode() == 304) {
+                response.body().close();
+                LoadedFeed loaded = loadSnapshot(url, cached.getEtag(), cached.getLastModified(), writer,
+                        rowFilter);
+                if (loaded != null) {
+                    return loaded;
+                }
+                response = download(url, null, null);
+            } else if (response.statusCode() == 200 && cached != null && cached.getContentHash() != null) {
+                return loadUnlessSameContent(url, cached, response, writer, rowFilter);
+            }
 
-            GtfsRoute route = new GtfsRoute(
-                    row[routeIdIdx],
-                    routeShortNameIdx >= 0 && row.length > routeShortNameIdx ? row[routeShortNameIdx] : null,
-                    routeLongNameIdx >= 0 && row.length > routeLongNameIdx ? row[routeLongNameIdx] : null,
-                    routeTypeIdx >= 0 && row.length > routeTypeIdx ? parseIntOrNull(row[routeTypeIdx]) : null);
-            routes.add(route);
+            return parseZip(url, response, writer, null, rowFilter);
+        } finally {
+            // Don't report the feed as loaded, or leave it half-written, while its
+            // batches are still queued
+            writer.await();
         }
+    }
 
-        routeRepository.saveAll(routes);
-        logger.info("Loaded {} routes", routes.size());
+    /**
+     * Replays the feed's snapshot, returning null if it could not be read so
+     * the caller can fall back to a full download. Merges are idempotent, so
+     * rows written before a failure are simply written again.
+     */
+    private LoadedFeed loadSnapshot(String url, String etag, String lastModified, BatchWriter writer,
+            StaticEntitySink.RowFilter rowFilter) throws InterruptedException {
+        StaticEntitySink sink = new StaticEntitySink(bulkRepository, writer, batchSize, null, null, rowFilter,
+                gtfsConfig.getStaticAgency(url));
+        try {
+            if (snapshotStore.load(url, sink)) {
+                sink.flush();
+                return new LoadedFeed(etag, lastModified, sink);
+            }
+        } catch (IOException e) {
+            logger.warn("GTFS snapshot for {} could not be loaded", url, e);
+        }
+        logger.info("Downloading {} again without a snapshot", url);
+        return null;
     }
 
-    private void loadStops(Path stopsFile) throws IOException {
-        List<GtfsStop> stops = new ArrayList<>();
-        List<String[]> rows = parseCsv(stopsFile);
+    /**
+     * Handles a full response for a feed that has a snapshot, as servers
+     * without validators always send one. The zip is spooled to disk and
+     * hashed first: if it matches the snapshot the snapshot is replayed,
+     * skipping the CSV parse, otherwise the spooled zip is parsed.
+     */
+    private LoadedFeed loadUnlessSameContent(String url, GtfsSnapshotStore.SnapshotHeader cached,
+            HttpResponse<InputStream> response, BatchWriter writer, StaticEntitySink.RowFilter rowFilter)
+            throws IOException, InterruptedException {
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+
+        MessageDigest digest = GtfsSnapshotStore.sha256();
+        Path zip = snapshotStore.spool(response.body(), digest);
+        try {
+            if (cached.getContentHash().equals(HexFormat.of().formatHex(digest.digest()))) {
+                logger.info("GTFS zip from {} is unchanged since the snapshot written at {}", url,
+                        Instant.ofEpochMilli(cached.getWrittenAt()));
+                LoadedFeed loaded = loadSnapshot(url, etag, lastModified, writer, rowFilter);
+                if (loaded != null) {
+                    return loaded;
+                }
+            }
+            try (InputStream in = Files.newInputStream(zip)) {
+                return parseZip(url, in, etag, lastModified, writer, null, rowFilter);
+            }
+        } finally {
+            Files.deleteIfExists(zip);
+        }
+    }
 
-        if (rows.isEmpty())
-            return;
+    private HttpResponse<InputStream> download(String url, String etag, String lastModified)
+            throws IOException, InterruptedException {
+        logger.info("Downloading GTFS zip from {}", url);
 
-        String[] headers = rows.get(0);
-        int stopIdIdx = indexOf(headers, "stop_id");
-        int stopNameIdx = indexOf(headers, "stop_name");
-        int stopLatIdx = indexOf(headers, "stop_lat");
-        int stopLonIdx = indexOf(headers, "stop_lon");
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(url));
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
 
-        for (int i = 1; i < rows.size(); i++) {
-            String[] row = rows.get(i);
-            if (row.length <= stopIdIdx)
-                continue;
+        return httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
 
-            GtfsStop stop = new GtfsStop(
-                    row[stopIdIdx],
-                    stopNameIdx >= 0 && row.length > stopNameIdx ? row[stopNameIdx] : null,
-                    stopLatIdx >= 0 && row.length > stopLatIdx ? parseDoubleOrNull(row[stopLatIdx]) : null,
-                    stopLonIdx >= 0 && row.length > stopLonIdx ? parseDoubleOrNull(row[stopLonIdx]) : null);
-            stops.add(stop);
+    /**
+     * Parses the files we need straight from the response body, recording them
+     * in a new snapshot as they go. Nothing is buffered in memory or extracted
+     * to disk; entries are matched by file name so zips that nest the files in a
+     * subdirectory (e.g. "GTFS/") work too.
+     */
+    private LoadedFeed parseZip(String url, HttpResponse<InputStream> response, BatchWriter writer,
+            NameCacheUpdate cacheUpdate, StaticEntitySink.RowFilter rowFilter)
+            throws IOException, InterruptedException {
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Failed to download GTFS zip. Status code: " + response.statusCode());
         }
 
-        stopRepository.saveAll(stops);
-        logger.info("Loaded {} stops", stops.size());
+        return parseZip(url, response.body(), response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null), writer, cacheUpdate, rowFilter);
     }
 
-    private void loadTrips(Path tripsFile) throws IOException {
-        List<GtfsTrip> trips = new ArrayList<>();
-        List<String[]> rows = parseCsv(tripsFile);
+    private LoadedFeed parseZip(String url, InputStream zip, String etag, String lastModified,
+            BatchWriter writer, NameCacheUpdate cacheUpdate, StaticEntitySink.RowFilter rowFilter)
+            throws IOException, InterruptedException {
+        MessageDigest digest = GtfsSnapshotStore.sha256();
+        InputStream body = new DigestInputStream(zip, digest);
+
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(body));
+                GtfsSnapshotStore.SnapshotWriter snapshot = snapshotStore.open(url, etag, lastModified)) {
+            StaticEntitySink sink = new StaticEntitySink(bulkRepository, writer, batchSize, snapshot, cacheUpdate,
+                    rowFilter, gtfsConfig.getStaticAgency(url));
+            boolean foundRoutes = false;
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.isDirectory())
+                    continue;
+
+                String name = entry.getName();
+                String fileName = name.substring(name.lastIndexOf('/') + 1);
+                switch (fileName) {
+                    case "routes.txt" -> {
+                        loadRoutes(nonClosing(zis), name, sink);
+                        foundRoutes = true;
+                    }
+                    case "stops.txt" -> loadStops(nonClosing(zis), name, sink);
+                    case "trips.txt" -> loadTrips(nonClosing(zis), name, sink);
+                    case "stop_times.txt" -> loadStopTimes(nonClosing(zis), name, sink);
+                    default -> {
+                        // Not used; getNextEntry skips the rest of it
+                    }
+                }
+            }
+            sink.flush();
 
-        if (rows.isEmpty())
-            return;
+            if (!foundRoutes) {
+                throw new IOException("Could not find routes.txt in GTFS zip");
+            }
 
-        String[] headers = rows.get(0);
-        int tripIdIdx = indexOf(headers, "trip_id");
-        int routeIdIdx = indexOf(headers, "route_id");
-        int tripHeadsignIdx = indexOf(headers, "trip_headsign");
-        int directionIdIdx = indexOf(headers, "direction_id");
+            if (snapshot != null) {
+                // The zip's central directory follows the last entry; hash it too
+                body.transferTo(OutputStream.nullOutputStream());
+                snapshot.commit(HexFormat.of().formatHex(digest.digest()));
+            }
+            return new LoadedFeed(etag, lastModified, sink);
+        }
+    }
 
-        for (int i = 1; i < rows.size(); i++) {
-            String[] row = rows.get(i);
-            if (row.length <= tripIdIdx)
-                continue;
+    private void loadRoutes(InputStream in, String fileName, StaticEntitySink sink)
+            throws IOException, InterruptedException {
+        try (GtfsCsvReader csv = new GtfsCsvReader(in)) {
+            if (!csv.next())
+                return;
+
+            int routeIdIdx = csv.indexOf("route_id");
+            int routeShortNameIdx = csv.indexOf("route_short_name");
+            int routeLongNameIdx = csv.indexOf("route_long_name");
+            int routeTypeIdx = csv.indexOf("route_type");
+            if (routeIdIdx < 0) {
+                logger.warn("{} has no route_id column, skipping", fileName);
+                return;
+            }
 
-            GtfsTrip trip = new GtfsTrip(
-                    row[tripIdIdx],
-                    routeIdIdx >= 0 && row.length > routeIdIdx ? row[routeIdIdx] : null,
-                    tripHeadsignIdx >= 0 && row.length > tripHeadsignIdx ? row[tripHeadsignIdx] : null,
-                    directionIdIdx >= 0 && row.length > directionIdIdx ? parseIntOrNull(row[directionIdIdx]) : null);
-            trips.add(trip);
+            int count = 0;
+            while (csv.next()) {
+                if (csv.size() <= routeIdIdx)
+                    continue;
+
+                sink.addRoute(new GtfsRoute(
+                        csv.get(routeIdIdx),
+                        csv.get(routeShortNameIdx),
+                        csv.get(routeLongNameIdx),
+                        parseIntOrNull(csv.get(routeTypeIdx))));
+                count++;
+            }
+            logger.info("Parsed {} routes from {}", count, fileName);
         }
-
-        tripRepository.saveAll(trips);
-        logger.info("Loaded {} trips", trips.size());
     }
 
-    private List<String[]> parseCsv(Path file) throws IOException {
-        List<String[]> rows = new ArrayList<>();
-        try (BufferedReader reader = Files.newBufferedReader(file)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                rows.add(parseCsvLine(line));
+    private void loadStops(InputStream in, String fileName, StaticEntitySink sink)
+            throws IOException, InterruptedException {
+        try (GtfsCsvReader csv = new GtfsCsvReader(in)) {
+            if (!csv.next())
+                return;
+
+            int stopIdIdx = csv.indexOf("stop_id");
+            int stopNameIdx = csv.indexOf("stop_name");
+            int stopLatIdx = csv.indexOf("stop_lat");
+            int stopLonIdx = csv.indexOf("stop_lon");
+            if (stopIdIdx < 0) {
+                logger.warn("{} has no stop_id column, skipping", fileName);
+                return;
             }
+
+            int count = 0;
+            while (csv.next()) {
+                if (csv.size() <= stopIdIdx)
+                    continue;
+
+                sink.addStop(new GtfsStop(
+                        csv.get(stopIdIdx),
+                        csv.get(stopNameIdx),
+                        parseDoubleOrNull(csv.get(stopLatIdx)),
+                        parseDoubleOrNull(csv.get(stopLonIdx))));
+                count++;
+            }
+            logger.info("Parsed {} stops from {}", count, fileName);
         }
-        return rows;
     }
 
-    /**
-     * Parses a CSV line handling quoted fields (e.g. stop names containing commas).
-     */
-    private String[] parseCsvLine(String line) {
-        List<String> fields = new ArrayList<>();
-        StringBuilder current = new StringBuilder();
-        boolean inQuotes = false;
-
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (inQuotes) {
-                if (c == '"') {
-                    // Check for escaped quote ("")
-                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                        current.append('"');
-                        i++;
-                    } else {
-                        inQuotes = false;
-                    }
-                } else {
-                    current.append(c);
-                }
-            } else {
-                if (c == '"') {
-                    inQuotes = true;
-                } else if (c == ',') {
-                    fields.add(current.toString());
-                    current.setLength(0);
-                } else {
-                    current.append(c);
-                }
+    private void loadTrips(InputStream in, String fileName, StaticEntitySink sink)
+            throws IOException, InterruptedException {
+        try (GtfsCsvReader csv = new GtfsCsvReader(in)) {
+            if (!csv.next())
+                return;
+
+            int tripIdIdx = csv.indexOf("trip_id");
+            int routeIdIdx = csv.indexOf("route_id");
+            int tripHeadsignIdx = csv.indexOf("trip_headsign");
+            int directionIdIdx = csv.indexOf("direction_id");
+            if (tripIdIdx < 0) {
+                logger.warn("{} has no trip_id column, skipping", fileName);
+                return;
             }
+
+            int count = 0;
+            while (csv.next()) {
+                if (csv.size() <= tripIdIdx)
+                    continue;
+
+                sink.addTrip(new GtfsTrip(
+                        csv.get(tripIdIdx),
+                        csv.get(routeIdIdx),
+                        csv.get(tripHeadsignIdx),
+                        parseIntOrNull(csv.get(directionIdIdx))));
+                count++;
+            }
+            logger.info("Parsed {} trips from {}", count, fileName);
         }
-        fields.add(current.toString());
-        return fields.toArray(new String[0]);
     }
 
-    private void deleteTempDirectory(Path dir) {
-        try {
-            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    Files.delete(file);
-                    return FileVisitResult.CONTINUE;
-                }
+    private void loadStopTimes(InputStream in, String fileName, StaticEntitySink sink) throws IOException {
+        try (GtfsCsvReader csv = new GtfsCsvReader(in)) {
+            if (!csv.next())
+                return;
+
+            int tripIdIdx = csv.indexOf("trip_id");
+            int stopIdIdx = csv.indexOf("stop_id");
+            int stopSequenceIdx = csv.indexOf("stop_sequence");
+            int arrivalTimeIdx = csv.indexOf("arrival_time");
+            int departureTimeIdx = csv.indexOf("departure_time");
+            if (tripIdIdx < 0 || stopIdIdx < 0 || stopSequenceIdx < 0) {
+                logger.warn("{} has no trip_id, stop_id or stop_sequence column, skipping", fileName);
+                return;
+            }
 
-                @Override
-                public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
-                    Files.delete(d);
-                    return FileVisitResult.CONTINUE;
-                }
-            });
-        } catch (IOException e) {
-            logger.warn("Failed to clean up temp directory: {}", dir, e);
+            int count = 0;
+            while (csv.next()) {
+                Integer stopSequence = parseIntOrNull(csv.get(stopSequenceIdx));
+                if (stopSequence == null || csv.get(tripIdIdx) == null || csv.get(stopIdIdx) == null)
+                    continue;
+
+                sink.addStopTime(
+                        csv.get(tripIdIdx),
+                        csv.get(stopIdIdx),
+                        stopSequence,
+                        StopTimesStore.parseTime(csv.get(arrivalTimeIdx)),
+                        StopTimesStore.parseTime(csv.get(departureTimeIdx)));
+                count++;
+            }
+            logger.info("Parsed {} stop times from {}", count, fileName);
         }
     }
 
-    private int indexOf(String[] array, String value) {
-        for (int i = 0; i < array.length; i++) {
-            if (array[i].equals(value)) {
-                return i;
+    /**
+     * Wraps the current zip entry so closing the CSV reader does not close the
+     * whole zip stream.
+     */
+    private static InputStream nonClosing(ZipInputStream zis) {
+        return new FilterInputStream(zis) {
+            @Override
+            public void close() {
             }
-        }
-        return -1;
+        };
     }
 
     private Integer parseIntOrNull(String value) {
+        if (value == null)
+            return null;
         try {
             return Integer.parseInt(value.trim());
         } catch (NumberFormatException e) {
@@ -316,10 +614,34 @@ public class GtfsStaticDataLoader implements ApplicationRunner {
     }
 
     private Double parseDoubleOrNull(String value) {
+        if (value == null)
+            return null;
         try {
             return Double.parseDouble(value.trim());
         } catch (NumberFormatException e) {
             return null;
         }
     }
+
+    /**
+     * Validators, ids and stop times of the last successful load of a feed.
+     */
+    private static final class LoadedFeed {
+
+        private final String etag;
+        private final String lastModified;
+        private final Set<String> routeIds;
+        private final Set<String> stopIds;
+        private final Set<String> tripIds;
+        private final StopTimesStore stopTimes;
+
+        private LoadedFeed(String etag, String lastModified, StaticEntitySink sink) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.routeIds = sink.getRouteIds();
+            this.stopIds = sink.getStopIds();
+            this.tripIds = sink.getTripIds();
+            this.stopTimes = sink.buildStopTimes();
+        }
+    }
 }
@@ -0,0 +1,91 @@
+package com.transittracker.service;
+
+import com.transittracker.cache.OverlayStringMap;
+import com.transittracker.entity.GtfsRoute;
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.entity.GtfsTrip;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Name changes collected while static entities are reloaded, to be applied to
+ * the realtime service's caches with
+ * {@link GtfsRealtimeService#applyCacheUpdate}. Entities are compared with the
+ * caches as they were when the update was created, so only names that
+ * actually changed are kept.
+ */
+public final class NameCacheUpdate {
+
+    private final OverlayStringMap currentRouteNames;
+    private final OverlayStringMap currentStopNames;
+    private final OverlayStringMap currentTripHeadsigns;
+
+    // A null value removes the entry
+    private final Map<String, String> routeNames = new HashMap<>();
+    private final Map<String, String> stopNames = new HashMap<>();
+    private final Map<String, String> tripHeadsigns = new HashMap<>();
+
+    NameCacheUpdate(OverlayStringMap currentRouteNames, OverlayStringMap currentStopNames,
+            OverlayStringMap currentTripHeadsigns) {
+        this.currentRouteNames = currentRouteNames;
+        this.currentStopNames = currentStopNames;
+        this.currentTripHeadsigns = currentTripHeadsigns;
+    }
+
+    public void route(GtfsRoute route) {
+        record(routeNames, currentRouteNames, route.getRouteId(), GtfsRealtimeService.routeName(route));
+    }
+
+    public void stop(GtfsStop stop) {
+        record(stopNames, currentStopNames, stop.getStopId(), GtfsRealtimeService.stopName(stop));
+    }
+
+    public void trip(GtfsTrip trip) {
+        record(tripHeadsigns, currentTripHeadsigns, trip.getTripId(), trip.getTripHeadsign());
+    }
+
+    public void removeRoute(String routeId) {
+        record(routeNames, currentRouteNames, routeId, null);
+    }
+
+    public void removeStop(String stopId) {
+        record(stopNames, currentStopNames, stopId, null);
+    }
+
+    public void removeTrip(String tripId) {
+        record(tripHeadsigns, currentTripHeadsigns, tripId, null);
+    }
+
+    public boolean isEmpty() {
+        return routeNames.isEmpty() && stopNames.isEmpty() && tripHeadsigns.isEmpty();
+    }
+
+    public int size() {
+        return routeNames.size() + stopNames.size() + tripHeadsigns.size();
+    }
+
+    Map<String, String> getRouteNames() {
+        return routeNames;
+    }
+
+    Map<String, String> getStopNames() {
+        return stopNames;
+    }
+
+    Map<String, String> getTripHeadsigns() {
+        return tripHeadsigns;
+    }
+
+    private static void record(Map<String, String> changes, OverlayStringMap current, String id, String name) {
+        if (id == null)
+            return;
+        if (Objects.equals(current.get(id), name)) {
+            // Back to the cached name; drop anything recorded earlier for this id
+            changes.remove(id);
+        } else {
+            changes.put(id, name);
+        }
+    }
+}
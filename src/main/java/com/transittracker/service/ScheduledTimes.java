@@ -0,0 +1,97 @@
+package com.transittracker.service;
+
+import com.transittracker.repository.StopTimesStore;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Turns a realtime delay without an absolute time into one, by adding it to
+ * the scheduled stop time from the static feeds.
+ *
+ * <p>
+ * GTFS stop times count from "noon minus 12 hours" of the trip's service day
+ * in the agency's time zone, which is midnight except on daylight saving days.
+ * The service day is the trip's start date; when the feed leaves it out, the
+ * day before, of or after today whose scheduled time is nearest to now is used.
+ */
+final class ScheduledTimes {
+
+    static final long UNRESOLVED = 0;
+
+    private final List<StopTimesStore> stores;
+    private final ZoneId zone;
+    private final long now;
+
+    /**
+     * @param now POSIX seconds, to pick the service day of trips without a
+     *            start date
+     */
+    ScheduledTimes(List<StopTimesStore> stores, ZoneId zone, long now) {
+        this.stores = stores;
+        this.zone = zone;
+        this.now = now;
+    }
+
+    /**
+     * The scheduled arrival at a stop plus the delay in POSIX seconds, or
+     * {@link #UNRESOLVED} if the stop time is not in any static feed.
+     */
+    long arrival(String tripId, String startDate, int stopSequence, int delay) {
+        return resolve(scheduled(tripId, stopSequence, false), startDate, delay);
+    }
+
+    /**
+     * The scheduled departure from a stop plus the delay in POSIX seconds, or
+     * {@link #UNRESOLVED} if the stop time is not in any static feed.
+     */
+    long departure(String tripId, String startDate, int stopSequence, int delay) {
+        return resolve(scheduled(tripId, stopSequence, true), startDate, delay);
+    }
+
+    private int scheduled(String tripId, int stopSequence, boolean departure) {
+        for (StopTimesStore store : stores) {
+            int time = departure ? store.scheduledDeparture(tripId, stopSequence)
+                    : store.scheduledArrival(tripId, stopSequence);
+            if (time != StopTimesStore.NO_TIME)
+                return time;
+        }
+        return StopTimesStore.NO_TIME;
+    }
+
+    private long resolve(int scheduled, String startDate, int delay) {
+        if (scheduled == StopTimesStore.NO_TIME)
+            return UNRESOLVED;
+
+        LocalDate serviceDay = parseDate(startDate);
+        if (serviceDay != null)
+            return serviceDayStart(serviceDay) + scheduled + delay;
+
+        LocalDate today = LocalDate.ofInstant(Instant.ofEpochSecond(now), zone);
+        long best = UNRESOLVED;
+        for (LocalDate day = today.minusDays(1); !day.isAfter(today.plusDays(1)); day = day.plusDays(1)) {
+            long time = serviceDayStart(day) + scheduled + delay;
+            if (best == UNRESOLVED || Math.abs(time - now) < Math.abs(best - now))
+                best = time;
+        }
+        return best;
+    }
+
+    private long serviceDayStart(LocalDate day) {
+        return day.atTime(12, 0).atZone(zone).minusHours(12).toEpochSecond();
+    }
+
+    private static LocalDate parseDate(String startDate) {
+        if (startDate == null || startDate.isEmpty())
+            return null;
+        try {
+            return LocalDate.parse(startDate, DateTimeFormatter.BASIC_ISO_DATE);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.transittracker.service;
+
+import com.transittracker.entity.GtfsRoute;
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.entity.GtfsTrip;
+import com.transittracker.repository.GtfsBulkRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Settles route, stop and trip ids that several static feeds share while the
+ * feeds load concurrently. The first feed to reach an id writes its row
+ * straight away; other feeds hold theirs back. Once every feed has loaded,
+ * {@link #writeHeldRows} writes the row of the feed listed last in the
+ * configuration, so the result is the same as loading the feeds one after
+ * another, whatever order their batches were written in.
+ *
+ * <p>
+ * Only held back rows are kept in memory, at most one per shared id.
+ */
+final class SharedIds {
+
+    private final Claims<GtfsRoute> routes = new Claims<>();
+    private final Claims<GtfsStop> stops = new Claims<>();
+    private final Claims<GtfsTrip> trips = new Claims<>();
+
+    /**
+     * The filter for the feed at the given position in the configuration.
+     */
+    StaticEntitySink.RowFilter forFeed(int feedIndex) {
+        return new StaticEntitySink.RowFilter() {
+            @Override
+            public boolean writeRoute(GtfsRoute route) {
+                return routes.claim(route.getRouteId(), feedIndex, route);
+            }
+
+            @Override
+            public boolean writeStop(GtfsStop stop) {
+                return stops.claim(stop.getStopId(), feedIndex, stop);
+            }
+
+            @Override
+            public boolean writeTrip(GtfsTrip trip) {
+                return trips.claim(trip.getTripId(), feedIndex, trip);
+            }
+        };
+    }
+
+    int sharedRoutes() {
+        return routes.held.size();
+    }
+
+    int sharedStops() {
+        return stops.held.size();
+    }
+
+    int sharedTrips() {
+        return trips.held.size();
+    }
+
+    /**
+     * Writes each held back row whose feed comes after the feed that wrote the
+     * id first. Call once every feed has finished writing.
+     */
+    void writeHeldRows(GtfsBulkRepository bulkRepository, int batchSize) {
+        writeInBatches(routes.winners(), bulkRepository::mergeRoutes, batchSize);
+        writeInBatches(stops.winners(), bulkRepository::mergeStops, batchSize);
+        writeInBatches(trips.winners(), bulkRepository::mergeTrips, batchSize);
+    }
+
+    private static <T> void writeInBatches(List<T> rows, Consumer<List<T>> writer, int batchSize) {
+        for (int start = 0; start < rows.size(); start += batchSize) {
+            writer.accept(rows.subList(start, Math.min(rows.size(), start + batchSize)));
+        }
+    }
+
+    private static final class Claims<T> {
+
+        // Feed that wrote each id first, and the latest-configured feed's row
+        // for ids that another feed wrote first
+        private final ConcurrentHashMap<String, Integer> firstFeed = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, Held<T>> held = new ConcurrentHashMap<>();
+
+        boolean claim(String id, int feedIndex, T row) {
+            Integer first = firstFeed.putIfAbsent(id, feedIndex);
+            if (first == null || first == feedIndex) {
+                return true;
+            }
+            held.merge(id, new Held<>(feedIndex, row),
+                    (current, candidate) -> candidate.feedIndex >= current.feedIndex ? candidate : current);
+            return false;
+        }
+
+        List<T> winners() {
+            List<T> rows = new ArrayList<>();
+            held.forEach((id, row) -> {
+                if (row.feedIndex > firstFeed.get(id)) {
+                    rows.add(row.row);
+                }
+            });
+            return rows;
+        }
+    }
+
+    private static final class Held<T> {
+        final int feedIndex;
+        final T row;
+
+        Held(int feedIndex, T row) {
+            this.feedIndex = feedIndex;
+            this.row = row;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.transittracker.service;
+
+import com.transittracker.config.RealtimeFeed;
+import com.transittracker.entity.GtfsRoute;
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.entity.GtfsTrip;
+import com.transittracker.repository.GtfsBulkRepository;
+import com.transittracker.repository.StopTimesStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the static entities of one feed, whether parsed from the zip or
+ * replayed from a snapshot, into batches for the bulk repository. When a
+ * snapshot is being written, every entity is also appended to it.
+ *
+ * <p>
+ * The ids seen are kept so a later reload of the feed can delete the rows it
+ * no longer contains. During a reload, names are also checked against the
+ * realtime service's caches so only changed ones are refreshed.
+ *
+ * <p>
+ * Stop times are not written to the database; they are collected into a
+ * {@link StopTimesStore} instead.
+ *
+ * <p>
+ * A feed that belongs to an agency has its ids namespaced as the agency's
+ * realtime ids are, after they are recorded in the snapshot. Snapshots keep
+ * the raw ids, so they survive a change of agency.
+ */
+final class StaticEntitySink {
+
+    private final GtfsBulkRepository bulkRepository;
+    private final BatchWriter writer;
+    private final int batchSize;
+    private final GtfsSnapshotStore.SnapshotWriter snapshot;
+    private final NameCacheUpdate cacheUpdate;
+    private final RowFilter rowFilter;
+    private final String agency;
+
+    private final List<GtfsRoute> routes;
+    private final List<GtfsStop> stops;
+    private final List<GtfsTrip> trips;
+
+    private final Set<String> routeIds = new HashSet<>();
+    private final Set<String> stopIds = new HashSet<>();
+    private final Set<String> tripIds = new HashSet<>();
+
+    private final StopTimesStore.Builder stopTimes = new StopTimesStore.Builder();
+
+    StaticEntitySink(GtfsBulkRepository bulkRepository, BatchWriter writer, int batchSize,
+            GtfsSnapshotStore.SnapshotWriter snapshot, NameCacheUpdate cacheUpdate) {
+        this(bulkRepository, writer, batchSize, snapshot, cacheUpdate, RowFilter.ALL, "");
+    }
+
+    /**
+     * @param snapshot    where to record the entities, or null to only write
+     *                    them to the database
+     * @param cacheUpdate where to collect changed names, or null when the caches
+     *                    will be rebuilt in full
+     * @param rowFilter   which rows to write, for ids shared with other feeds
+     * @param agency      namespace for the feed's ids, or "" to keep them raw
+     */
+    StaticEntitySink(GtfsBulkRepository bulkRepository, BatchWriter writer, int batchSize,
+            GtfsSnapshotStore.SnapshotWriter snapshot, NameCacheUpdate cacheUpdate, RowFilter rowFilter,
+            String agency) {
+        this.bulkRepository = bulkRepository;
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.snapshot = snapshot;
+        this.cacheUpdate = cacheUpdate;
+        this.rowFilter = rowFilter;
+        this.agency = agency;
+        this.routes = new ArrayList<>(batchSize);
+        this.stops = new ArrayList<>(batchSize);
+        this.trips = new ArrayList<>(batchSize);
+    }
+
+    void addRoute(GtfsRoute route) throws IOException, InterruptedException {
+        if (snapshot != null)
+            snapshot.writeRoute(route);
+        route.setRouteId(namespaced(route.getRouteId()));
+        routeIds.add(route.getRouteId());
+        if (!rowFilter.writeRoute(route))
+            return;
+        if (cacheUpdate != null)
+            cacheUpdate.route(route);
+        routes.add(route);
+        if (routes.size() == batchSize)
+            writer.submit(bulkRepository::mergeRoutes, routes);
+    }
+
+    void addStop(GtfsStop stop) throws IOException, InterruptedException {
+        if (snapshot != null)
+            snapshot.writeStop(stop);
+        stop.setStopId(namespaced(stop.getStopId()));
+        stopIds.add(stop.getStopId());
+        if (!rowFilter.writeStop(stop))
+            return;
+        if (cacheUpdate != null)
+            cacheUpdate.stop(stop);
+        stops.add(stop);
+        if (stops.size() == batchSize)
+            writer.submit(bulkRepository::mergeStops, stops);
+    }
+
+    void addTrip(GtfsTrip trip) throws IOException, InterruptedException {
+        if (snapshot != null)
+            snapshot.writeTrip(trip);
+        trip.setTripId(namespaced(trip.getTripId()));
+        trip.setRouteId(namespaced(trip.getRouteId()));
+        tripIds.add(trip.getTripId());
+        stopTimes.trip(trip.getTripId(), trip.getRouteId());
+        if (!rowFilter.writeTrip(trip))
+            return;
+        if (cacheUpdate != null)
+            cacheUpdate.trip(trip);
+        trips.add(trip);
+        if (trips.size() == batchSize)
+            writer.submit(bulkRepository::mergeTrips, trips);
+    }
+
+    void addStopTime(String tripId, String stopId, int stopSequence, int arrivalTime, int departureTime)
+            throws IOException {
+        if (snapshot != null)
+            snapshot.writeStopTime(tripId, stopId, stopSequence, arrivalTime, departureTime);
+        stopTimes.add(namespaced(tripId), namespaced(stopId), stopSequence, arrivalTime, departureTime);
+    }
+
+    private String namespaced(String id) {
+        return RealtimeFeed.namespaced(agency, id);
+    }
+
+    /**
+     * Submits any partially filled batches.
+     */
+    void flush() throws InterruptedException {
+        writer.submit(bulkRepository::mergeRoutes, routes);
+        writer.submit(bulkRepository::mergeStops, stops);
+        writer.submit(bulkRepository::mergeTrips, trips);
+    }
+
+    Set<String> getRouteIds() {
+        return routeIds;
+    }
+
+    Set<String> getStopIds() {
+        return stopIds;
+    }
+
+    Set<String> getTripIds() {
+        return tripIds;
+    }
+
+    StopTimesStore buildStopTimes() {
+        return stopTimes.build();
+    }
+
+    /**
+     * Decides whether a row is written to the database (and its name checked
+     * against the caches). The feed's snapshot and id sets always get every
+     * row; only rows whose id another feed also provides are filtered out.
+     */
+    interface RowFilter {
+
+        RowFilter ALL = new RowFilter() {
+            @Override
+            public boolean writeRoute(GtfsRoute route) {
+                return true;
+            }
+
+            @Override
+            public boolean writeStop(GtfsStop stop) {
+                return true;
+            }
+
+            @Override
+            public boolean writeTrip(GtfsTrip trip) {
+                return true;
+            }
+        };
+
+        boolean writeRoute(GtfsRoute route);
+
+        boolean writeStop(GtfsStop stop);
+
+        boolean writeTrip(GtfsTrip trip);
+    }
+}
@@ -0,0 +1,178 @@
+package com.transittracker;
+
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+import com.transittracker.config.GtfsConfig;
+import com.transittracker.config.RealtimeFeed;
+import com.transittracker.repository.TransitRepository;
+import com.transittracker.service.DataPollingService;
+import com.transittracker.service.GtfsRealtimeService;
+import com.transittracker.service.GtfsStaticDataLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureGraphQlTester;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.graphql.test.tester.GraphQlTester;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Two agencies whose static and realtime feeds use the same raw ids.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:multiagency",
+        "gtfs.static.download-urls=",
+        "gtfs.static.snapshot-dir=",
+        "gtfs.static.reload-interval=0",
+        "gtfs.realtime.feeds[0].agency=a",
+        "gtfs.realtime.feeds[0].trip-updates-url=http://a.example/tripupdates",
+        "gtfs.realtime.feeds[0].static-urls=http://a.example/gtfs.zip",
+        "gtfs.realtime.feeds[1].agency=b",
+        "gtfs.realtime.feeds[1].trip-updates-url=http://b.example/tripupdates",
+        "gtfs.realtime.feeds[1].static-urls=http://b.example/gtfs.zip" })
+@AutoConfigureGraphQlTester
+public class MultiAgencyIntegrationTest {
+
+    @Autowired
+    private GraphQlTester graphQlTester;
+
+    @Autowired
+    private GtfsConfig gtfsConfig;
+
+    @Autowired
+    private TransitRepository transitRepository;
+
+    @Autowired
+    private GtfsRealtimeService gtfsRealtimeService;
+
+    @Autowired
+    private GtfsStaticDataLoader gtfsStaticDataLoader;
+
+    @MockBean
+    private HttpClient httpClient;
+
+    // Feeds are fetched by the test instead of on a schedule
+    @MockBean
+    private DataPollingService dataPollingService;
+
+    @BeforeEach
+    public void loadFeeds() throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        when(httpClient.<InputStream>send(any(), any())).thenAnswer(invocation -> {
+            String host = invocation.getArgument(0, HttpRequest.class).uri().getHost();
+            return host.startsWith("a.")
+                    ? response(staticZip("Mainline", 43.4516, -80.4925))
+                    : response(staticZip("Lakeshore", 43.6453, -79.3806));
+        });
+        when(httpClient.<InputStream>sendAsync(any(), any())).thenAnswer(invocation -> {
+            String host = invocation.getArgument(0, HttpRequest.class).uri().getHost();
+            long arrival = host.startsWith("a.") ? now + 300 : now + 600;
+            return CompletableFuture.completedFuture(response(tripUpdates(now, arrival)));
+        });
+
+        gtfsStaticDataLoader.run(null);
+        for (RealtimeFeed feed : gtfsConfig.getRealtimeFeeds()) {
+            transitRepository.updateTrips(feed.getAgency(),
+                    gtfsRealtimeService.fetchTripUpdatesAsync(feed).join().getEntities());
+        }
+    }
+
+    @Test
+    public void testStaticIdsCarryTheAgencyNamespace() {
+        graphQlTester.document("{ stops(routeId: \"a:7\") { stopId stopName } }")
+                .execute()
+                .path("stops").entityList(Object.class).hasSize(1)
+                .path("stops[0].stopId").entity(String.class).isEqualTo("a:1000")
+                .path("stops[0].stopName").entity(String.class).isEqualTo("Mainline Terminal");
+    }
+
+    @Test
+    public void testArrivalsAtAStaticStopMatchTheAgencysRealtimeTrips() {
+        graphQlTester.document("{ arrivals(stopId: \"b:1000\") { tripId routeId routeName tripHeadsign } }")
+                .execute()
+                .path("arrivals").entityList(Object.class).hasSize(1)
+                .path("arrivals[0].tripId").entity(String.class).isEqualTo("b:t1")
+                .path("arrivals[0].routeId").entity(String.class).isEqualTo("b:7")
+                .path("arrivals[0].routeName").entity(String.class).isEqualTo("Lakeshore")
+                .path("arrivals[0].tripHeadsign").entity(String.class).isEqualTo("Lakeshore Terminal");
+    }
+
+    @Test
+    public void testStopsNearLeadToArrivals() {
+        String stopId = graphQlTester.document("{ stopsNear(lat: 43.4516, lon: -80.4925, radiusMeters: 100) { stopId } }")
+                .execute()
+                .path("stopsNear").entityList(Object.class).hasSize(1)
+                .path("stopsNear[0].stopId").entity(String.class).get();
+
+        graphQlTester.document("{ arrivals(stopId: \"" + stopId + "\") { tripId } }")
+                .execute()
+                .path("arrivals").entityList(Object.class).hasSize(1)
+                .path("arrivals[0].tripId").entity(String.class).isEqualTo("a:t1");
+    }
+
+    private static byte[] staticZip(String name, double lat, double lon) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            entry(zip, "routes.txt", "route_id,route_short_name,route_long_name,route_type\n"
+                    + "7," + name + "," + name + " Line,3\n");
+            entry(zip, "stops.txt", "stop_id,stop_name,stop_lat,stop_lon\n"
+                    + "1000," + name + " Terminal," + lat + "," + lon + "\n");
+            entry(zip, "trips.txt", "route_id,service_id,trip_id,trip_headsign\n"
+                    + "7,weekday,t1," + name + " Terminal\n");
+            entry(zip, "stop_times.txt", "trip_id,arrival_time,departure_time,stop_id,stop_sequence\n"
+                    + "t1,08:00:00,08:00:00,1000,1\n");
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void entry(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private static byte[] tripUpdates(long now, long arrival) {
+        return FeedMessage.newBuilder()
+                .setHeader(FeedHeader.newBuilder().setGtfsRealtimeVersion("2.0").setTimestamp(now))
+                .addEntity(FeedEntity.newBuilder()
+                        .setId("1")
+                        .setTripUpdate(TripUpdate.newBuilder()
+                                .setTrip(TripDescriptor.newBuilder().setTripId("t1").setRouteId("7"))
+                                .addStopTimeUpdate(TripUpdate.StopTimeUpdate.newBuilder()
+                                        .setStopSequence(1)
+                                        .setStopId("1000")
+                                        .setArrival(TripUpdate.StopTimeEvent.newBuilder().setTime(arrival)))))
+                .build()
+                .toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<InputStream> response(byte[] body) {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.headers()).thenReturn(HttpHeaders.of(Map.of(), (name, value) -> true));
+        when(response.body()).thenReturn(new ByteArrayInputStream(body));
+        return response;
+    }
+}
@@ -1,7 +1,13 @@
 package com.transittracker;
 
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.model.StopTimeEvent;
+import com.transittracker.model.StopTimeUpdate;
 import com.transittracker.model.Trip;
 import com.transittracker.model.Vehicle;
+import com.transittracker.model.VehiclePosition;
+import com.transittracker.repository.GtfsStaticCatalog;
+import com.transittracker.repository.GtfsStopRepository;
 import com.transittracker.repository.TransitRepository;
 import com.transittracker.service.DataPollingService;
 import com.transittracker.service.GtfsRealtimeService;
@@ -14,6 +20,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.graphql.test.tester.GraphQlTester;
 
 import java.util.Arrays;
+import java.util.List;
 
 @SpringBootTest
 @AutoConfigureGraphQlTester
@@ -25,6 +32,12 @@ public class TransitIntegrationTest {
     @Autowired
     private TransitRepository transitRepository;
 
+    @Autowired
+    private GtfsStopRepository stopRepository;
+
+    @Autowired
+    private GtfsStaticCatalog staticCatalog;
+
     // Mock these so the test doesn't actually poll external APIs
     @MockBean
     private GtfsRealtimeService gtfsRealtimeService;
@@ -75,10 +88,161 @@ public class TransitIntegrationTest {
                 .path("trips[0].routeId").entity(String.class).isEqualTo("7");
     }
 
+    @Test
+    public void testGraphQLTripsQueryFiltersByVehicleId() {
+        Trip trip1 = new Trip();
+        trip1.setTripId("trip-a");
+        trip1.setRouteId("7");
+        trip1.setVehicle(new Vehicle("101", "Bus 101"));
+
+        Trip trip2 = new Trip();
+        trip2.setTripId("trip-b");
+        trip2.setRouteId("12");
+        trip2.setVehicle(new Vehicle("202", "Bus 202"));
+
+        transitRepository.updateTrips(Arrays.asList(trip1, trip2));
+
+        graphQlTester.document("{ trips(vehicleId: \"202\") { tripId } }")
+                .execute()
+                .path("trips").entityList(Object.class).hasSize(1)
+                .path("trips[0].tripId").entity(String.class).isEqualTo("trip-b");
+
+        // Route and vehicle filters must both match
+        graphQlTester.document("{ trips(routeId: \"7\", vehicleId: \"202\") { tripId } }")
+                .execute()
+                .path("trips").entityList(Object.class).hasSize(0);
+    }
+
+    @Test
+    public void testGraphQLTripsQueryReturnsEveryTripOfAVehicle() {
+        // A block: the bus runs trip-a on route 7, then interlines onto route 12
+        Trip trip1 = new Trip();
+        trip1.setTripId("trip-a");
+        trip1.setRouteId("7");
+        trip1.setVehicle(new Vehicle("101", "Bus 101"));
+
+        Trip trip2 = new Trip();
+        trip2.setTripId("trip-b");
+        trip2.setRouteId("12");
+        trip2.setVehicle(new Vehicle("101", "Bus 101"));
+
+        transitRepository.updateTrips(Arrays.asList(trip1, trip2));
+
+        graphQlTester.document("{ trips(vehicleId: \"101\") { tripId } }")
+                .execute()
+                .path("trips").entityList(Object.class).hasSize(2)
+                .path("trips[0].tripId").entity(String.class).isEqualTo("trip-a")
+                .path("trips[1].tripId").entity(String.class).isEqualTo("trip-b");
+
+        graphQlTester.document("{ trips(routeId: \"12\", vehicleId: \"101\") { tripId } }")
+                .execute()
+                .path("trips").entityList(Object.class).hasSize(1)
+                .path("trips[0].tripId").entity(String.class).isEqualTo("trip-b");
+    }
+
     @Test
     public void testVehiclePositionsQueryReturnsEmptyWhenNoData() {
         graphQlTester.document("{ vehiclePositions { vehicleId latitude longitude } }")
                 .execute()
                 .path("vehiclePositions").entityList(Object.class).hasSize(0);
     }
+
+    @Test
+    public void testArrivalsQueryReturnsUpcomingStopTimesInOrder() {
+        long now = System.currentTimeMillis() / 1000;
+        Trip later = tripAtStop("trip-later", "7", "1000", now + 600);
+        Trip sooner = tripAtStop("trip-sooner", "12", "1000", now + 120);
+        Trip departed = tripAtStop("trip-departed", "7", "1000", now - 300);
+        Trip elsewhere = tripAtStop("trip-elsewhere", "7", "2000", now + 60);
+
+        transitRepository.updateTrips(Arrays.asList(later, sooner, departed, elsewhere));
+
+        graphQlTester.document("{ arrivals(stopId: \"1000\") { tripId routeId arrival { time } } }")
+                .execute()
+                .path("arrivals").entityList(Object.class).hasSize(2)
+                .path("arrivals[0].tripId").entity(String.class).isEqualTo("trip-sooner")
+                .path("arrivals[1].tripId").entity(String.class).isEqualTo("trip-later");
+
+        graphQlTester.document("{ arrivals(stopId: \"1000\", withinSeconds: 300) { tripId } }")
+                .execute()
+                .path("arrivals").entityList(Object.class).hasSize(1);
+
+        graphQlTester.document("{ arrivals(stopId: \"1000\", limit: 1) { tripId } }")
+                .execute()
+                .path("arrivals").entityList(Object.class).hasSize(1)
+                .path("arrivals[0].tripId").entity(String.class).isEqualTo("trip-sooner");
+    }
+
+    @Test
+    public void testVehiclesNearAndInBoxQueries() {
+        VehiclePosition downtown = vehicleAt("101", 43.4516, -80.4925);
+        VehiclePosition uptown = vehicleAt("202", 43.4643, -80.5204);
+        VehiclePosition fairway = vehicleAt("303", 43.4239, -80.4395);
+        transitRepository.updateVehiclePositions(Arrays.asList(fairway, uptown, downtown));
+
+        try {
+            graphQlTester.document("{ vehiclesNear(lat: 43.4516, lon: -80.4925, radiusMeters: 3000) { vehicleId } }")
+                    .execute()
+                    .path("vehiclesNear").entityList(Object.class).hasSize(2)
+                    .path("vehiclesNear[0].vehicleId").entity(String.class).isEqualTo("101")
+                    .path("vehiclesNear[1].vehicleId").entity(String.class).isEqualTo("202");
+
+            graphQlTester.document("{ vehiclesInBox(minLat: 43.40, minLon: -80.45, maxLat: 43.43, maxLon: -80.43) { vehicleId } }")
+                    .execute()
+                    .path("vehiclesInBox").entityList(Object.class).hasSize(1)
+                    .path("vehiclesInBox[0].vehicleId").entity(String.class).isEqualTo("303");
+        } finally {
+            // The context is shared, so leave no positions behind for other tests
+            transitRepository.updateVehiclePositions(List.of());
+        }
+    }
+
+    @Test
+    public void testStopsNearQueryUsesStaticCatalog() {
+        stopRepository.saveAll(Arrays.asList(
+                new GtfsStop("1000", "Charles Terminal", 43.4516, -80.4925),
+                new GtfsStop("1001", "King / Victoria", 43.4528, -80.4950),
+                new GtfsStop("2000", "Fairway Station", 43.4239, -80.4395)));
+        staticCatalog.refresh(List.of());
+
+        try {
+            graphQlTester.document("{ stopsNear(lat: 43.4516, lon: -80.4925, radiusMeters: 400) { stopId } }")
+                    .execute()
+                    .path("stopsNear").entityList(Object.class).hasSize(2)
+                    .path("stopsNear[0].stopId").entity(String.class).isEqualTo("1000");
+
+            graphQlTester.document("{ stopsNear(lat: 43.4516, lon: -80.4925, radiusMeters: 400, limit: 1) { stopId } }")
+                    .execute()
+                    .path("stopsNear").entityList(Object.class).hasSize(1);
+
+            // Explicit nulls fall back to the defaults (500 m, 20 stops)
+            graphQlTester.document("{ stopsNear(lat: 43.4516, lon: -80.4925, radiusMeters: null, limit: null) { stopId } }")
+                    .execute()
+                    .path("stopsNear").entityList(Object.class).hasSize(2);
+        } finally {
+            stopRepository.deleteAll();
+            staticCatalog.refresh(List.of());
+        }
+    }
+
+    private static VehiclePosition vehicleAt(String vehicleId, double lat, double lon) {
+        VehiclePosition position = new VehiclePosition();
+        position.setVehicleId(vehicleId);
+        position.setLatitude(lat);
+        position.setLongitude(lon);
+        return position;
+    }
+
+    private static Trip tripAtStop(String tripId, String routeId, String stopId, long arrivalTime) {
+        StopTimeUpdate update = new StopTimeUpdate();
+        update.setStopSequence(1);
+        update.setStopId(stopId);
+        update.setArrival(new StopTimeEvent(arrivalTime, 0));
+
+        Trip trip = new Trip();
+        trip.setTripId(tripId);
+        trip.setRouteId(routeId);
+        trip.setStopTimeUpdates(List.of(update));
+        return trip;
+    }
 }
@@ -0,0 +1,56 @@
+package com.transittracker.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompactStringMapTest {
+
+    @Test
+    public void testLooksUpEntries() {
+        CompactStringMap.Builder builder = new CompactStringMap.Builder();
+        for (int i = 0; i < 10_000; i++) {
+            builder.put("trip-" + i, i % 2 == 0 ? "Conestoga" : "Fairview Park");
+        }
+        CompactStringMap map = builder.build();
+
+        assertThat(map.size()).isEqualTo(10_000);
+        assertThat(map.get("trip-0")).isEqualTo("Conestoga");
+        assertThat(map.get("trip-9999")).isEqualTo("Fairview Park");
+        assertThat(map.get("trip-10000")).isNull();
+        assertThat(map.get(null)).isNull();
+        assertThat(map.distinctValues()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRepeatedKeyKeepsLastValue() {
+        CompactStringMap map = new CompactStringMap.Builder()
+                .put("7", "Mainline")
+                .put("8", "Fairway")
+                .put("7", "King")
+                .put("9", null)
+                .build();
+
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(map.get("7")).isEqualTo("King");
+        assertThat(map.containsKey("9")).isFalse();
+    }
+
+    @Test
+    public void testCollidingKeysAreDistinguished() {
+        // "Aa" and "BB" have the same String hash code
+        CompactStringMap map = new CompactStringMap.Builder()
+                .put("Aa", "first")
+                .put("BB", "second")
+                .build();
+
+        assertThat(map.get("Aa")).isEqualTo("first");
+        assertThat(map.get("BB")).isEqualTo("second");
+    }
+
+    @Test
+    public void testEmptyMap() {
+        assertThat(CompactStringMap.EMPTY.size()).isZero();
+        assertThat(CompactStringMap.EMPTY.get("anything")).isNull();
+    }
+}
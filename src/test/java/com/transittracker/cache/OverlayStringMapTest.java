@@ -0,0 +1,54 @@
+package com.transittracker.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OverlayStringMapTest {
+
+    private static OverlayStringMap base(int size) {
+        CompactStringMap.Builder builder = new CompactStringMap.Builder();
+        for (int i = 0; i < size; i++) {
+            builder.put("stop-" + i, "Stop " + i);
+        }
+        return OverlayStringMap.of(builder.build());
+    }
+
+    @Test
+    public void testChangesShadowTheBase() {
+        OverlayStringMap original = base(10);
+        Map<String, String> changes = new HashMap<>();
+        changes.put("stop-1", "Renamed");
+        changes.put("stop-2", null);
+        changes.put("stop-99", "Added");
+
+        OverlayStringMap updated = original.with(changes);
+
+        assertThat(updated.get("stop-1")).isEqualTo("Renamed");
+        assertThat(updated.get("stop-2")).isNull();
+        assertThat(updated.get("stop-99")).isEqualTo("Added");
+        assertThat(updated.get("stop-3")).isEqualTo("Stop 3");
+        assertThat(updated.size()).isEqualTo(10);
+        // The original is unchanged
+        assertThat(original.get("stop-1")).isEqualTo("Stop 1");
+        assertThat(original.get("stop-2")).isEqualTo("Stop 2");
+    }
+
+    @Test
+    public void testLargeOverlayIsCompacted() {
+        Map<String, String> changes = new HashMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            changes.put("stop-" + i, i % 2 == 0 ? null : "Renamed " + i);
+        }
+
+        OverlayStringMap updated = base(4_000).with(changes);
+
+        assertThat(updated.size()).isEqualTo(3_000);
+        assertThat(updated.get("stop-0")).isNull();
+        assertThat(updated.get("stop-1")).isEqualTo("Renamed 1");
+        assertThat(updated.get("stop-3999")).isEqualTo("Stop 3999");
+    }
+}
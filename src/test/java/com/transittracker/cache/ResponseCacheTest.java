@@ -0,0 +1,57 @@
+package com.transittracker.cache;
+
+import com.transittracker.cache.ResponseCache.CachedResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseCacheTest {
+
+    private static CachedResponse response(int length) {
+        return new CachedResponse("application/json", new byte[length]);
+    }
+
+    @Test
+    public void testNewerVersionClearsEntries() {
+        ResponseCache cache = new ResponseCache(10, 1_000_000);
+        CachedResponse trips = response(10);
+        cache.put("trips", 1, 1, trips);
+
+        assertThat(cache.get("trips", 1, 1)).isSameAs(trips);
+        assertThat(cache.get("trips", 2, 1)).isNull();
+        assertThat(cache.size()).isZero();
+
+        // A response computed from an older snapshot is not stored
+        cache.put("trips", 1, 1, trips);
+        assertThat(cache.get("trips", 2, 1)).isNull();
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.misses()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache(2, 1_000_000);
+        cache.put("a", 1, 1, response(10));
+        cache.put("b", 1, 1, response(10));
+        cache.get("a", 1, 1);
+        cache.put("c", 1, 1, response(10));
+
+        assertThat(cache.get("a", 1, 1)).isNotNull();
+        assertThat(cache.get("b", 1, 1)).isNull();
+        assertThat(cache.get("c", 1, 1)).isNotNull();
+        assertThat(cache.evictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void testBoundsTotalBytes() {
+        ResponseCache cache = new ResponseCache(100, 1_000);
+        cache.put("a", 1, 1, response(500));
+        cache.put("b", 1, 1, response(500));
+        cache.put("too-big", 1, 1, response(2_000));
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get("b", 1, 1)).isNotNull();
+        assertThat(cache.get("too-big", 1, 1)).isNull();
+        assertThat(cache.bytes()).isLessThanOrEqualTo(1_000);
+    }
+}
@@ -0,0 +1,154 @@
+package com.transittracker.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.transittracker.config.ResponseCacheConfig;
+import com.transittracker.repository.GtfsStaticCatalog;
+import com.transittracker.repository.TransitRepository;
+import com.transittracker.repository.TransitSnapshot;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GraphQlResponseCacheFilterTest {
+
+    private final TransitSnapshot snapshot = mock(TransitSnapshot.class);
+    private final GtfsStaticCatalog staticCatalog = mock(GtfsStaticCatalog.class);
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private GraphQlResponseCacheFilter filter;
+    private String result = "{\"data\":{\"routes\":[]}}";
+
+    // Stands in for GraphQL, checking the body still reaches it
+    private final FilterChain graphQl = (request, response) -> {
+        executions.incrementAndGet();
+        assertThat(StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8)).contains("query");
+        response.setContentType("application/graphql-response+json");
+        response.getOutputStream().write(result.getBytes(StandardCharsets.UTF_8));
+    };
+
+    @BeforeEach
+    public void setUp() {
+        TransitRepository transitRepository = mock(TransitRepository.class);
+        ResponseCacheConfig config = mock(ResponseCacheConfig.class);
+        when(transitRepository.getSnapshot()).thenReturn(snapshot);
+        when(snapshot.getVersion()).thenReturn(1L);
+        when(staticCatalog.getVersion()).thenReturn(1L);
+        when(config.isEnabled()).thenReturn(true);
+        when(config.getMaxEntries()).thenReturn(100);
+        when(config.getMaxSize()).thenReturn(DataSize.ofMegabytes(1));
+
+        filter = new GraphQlResponseCacheFilter(transitRepository, staticCatalog, new ObjectMapper(), config,
+                "/graphql");
+    }
+
+    private MockHttpServletResponse post(String body) throws Exception {
+        return post(body, "application/graphql-response+json");
+    }
+
+    private MockHttpServletResponse post(String body, String accept) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/graphql");
+        request.setContentType("application/json");
+        request.addHeader("Accept", accept);
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, graphQl);
+        return response;
+    }
+
+    @Test
+    public void testServesRepeatedQueryFromCache() throws Exception {
+        MockHttpServletResponse first = post("{\"query\":\"{ routes { routeId } }\"}");
+        MockHttpServletResponse second = post("{\"query\":\"query {\\n  routes {\\n    routeId\\n  }\\n}\"}");
+
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(first.getContentAsString()).isEqualTo(result);
+        assertThat(second.getContentAsString()).isEqualTo(result);
+        assertThat(second.getContentType()).isEqualTo("application/graphql-response+json");
+    }
+
+    @Test
+    public void testKeysOnVariablesAndDataVersion() throws Exception {
+        String query = "query($routeId: String) { trips(routeId: $routeId) { tripId } }";
+        post("{\"query\":\"" + query + "\",\"variables\":{\"routeId\":\"7\"}}");
+        post("{\"query\":\"" + query + "\",\"variables\":{\"routeId\":\"7\"}}");
+        post("{\"query\":\"" + query + "\",\"variables\":{\"routeId\":\"12\"}}");
+        assertThat(executions.get()).isEqualTo(2);
+
+        when(snapshot.getVersion()).thenReturn(2L);
+        post("{\"query\":\"" + query + "\",\"variables\":{\"routeId\":\"7\"}}");
+        assertThat(executions.get()).isEqualTo(3);
+
+        when(staticCatalog.getVersion()).thenReturn(2L);
+        post("{\"query\":\"" + query + "\",\"variables\":{\"routeId\":\"7\"}}");
+        assertThat(executions.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void testKeysOnAcceptHeader() throws Exception {
+        post("{\"query\":\"{ routes { routeId } }\"}", "application/graphql-response+json");
+        post("{\"query\":\"{ routes { routeId } }\"}", "application/json");
+        post("{\"query\":\"{ routes { routeId } }\"}", "application/json");
+        assertThat(executions.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testReplayedBodyNotifiesReadListener() throws Exception {
+        List<String> events = new ArrayList<>();
+        FilterChain asyncReader = (request, response) -> {
+            ServletInputStream in = request.getInputStream();
+            in.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    events.add("data:" + StreamUtils.copyToString(in, StandardCharsets.UTF_8).length());
+                }
+
+                @Override
+                public void onAllDataRead() {
+                    events.add("done");
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    events.add("error");
+                }
+            });
+        };
+        String body = "{\"query\":\"{ routes { routeId } }\"}";
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/graphql");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        filter.doFilter(request, new MockHttpServletResponse(), asyncReader);
+
+        assertThat(events).containsExactly("data:" + body.length(), "done");
+    }
+
+    @Test
+    public void testSkipsUncacheableRequests() throws Exception {
+        post("{\"query\":\"{ subscriberStats { topic } }\"}");
+        post("{\"query\":\"{ subscriberStats { topic } }\"}");
+        post("{\"query\":\"{ arrivals(stopId: \\\"1000\\\") { tripId } }\"}");
+        post("{\"query\":\"{ arrivals(stopId: \\\"1000\\\") { tripId } }\"}");
+        assertThat(executions.get()).isEqualTo(4);
+
+        result = "{\"errors\":[{\"message\":\"boom\"}],\"data\":null}";
+        post("{\"query\":\"{ routes { routeId } }\"}");
+        post("{\"query\":\"{ routes { routeId } }\"}");
+        assertThat(executions.get()).isEqualTo(6);
+        assertThat(filter.getCache().size()).isZero();
+    }
+}
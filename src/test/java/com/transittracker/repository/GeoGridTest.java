@@ -0,0 +1,51 @@
+package com.transittracker.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GeoGridTest {
+
+    private static final class Point {
+        final String name;
+        final Double lat;
+        final Double lon;
+
+        Point(String name, Double lat, Double lon) {
+            this.name = name;
+            this.lat = lat;
+            this.lon = lon;
+        }
+    }
+
+    private final Point uptown = new Point("uptown", 43.4643, -80.5204);
+    private final Point downtown = new Point("downtown", 43.4516, -80.4925);
+    private final Point fairway = new Point("fairway", 43.4239, -80.4395);
+    private final Point unplaced = new Point("unplaced", null, -80.5);
+
+    private final GeoGrid<Point> grid = new GeoGrid<>(Arrays.asList(fairway, uptown, unplaced, downtown),
+            p -> p.lat, p -> p.lon, 0.01);
+
+    @Test
+    public void testInBoxReturnsOnlyPointsInside() {
+        assertThat(grid.size()).isEqualTo(3);
+        assertThat(grid.inBox(43.44, -80.53, 43.47, -80.48)).containsExactlyInAnyOrder(uptown, downtown);
+        assertThat(grid.inBox(0, 0, 1, 1)).isEmpty();
+        // Inverted boxes match nothing
+        assertThat(grid.inBox(43.47, -80.48, 43.44, -80.53)).isEmpty();
+    }
+
+    @Test
+    public void testNearReturnsPointsWithinRadiusNearestFirst() {
+        double toUptown = GeoGrid.distanceMeters(43.4516, -80.4925, 43.4643, -80.5204);
+        assertThat(toUptown).isBetween(2500.0, 2700.0);
+
+        List<Point> near = grid.near(43.4516, -80.4925, 3000);
+        assertThat(near).containsExactly(downtown, uptown);
+        assertThat(grid.near(43.4516, -80.4925, 10)).containsExactly(downtown);
+        assertThat(grid.near(43.4516, -80.4925, -1)).isEmpty();
+    }
+}
@@ -0,0 +1,71 @@
+package com.transittracker.repository;
+
+import com.transittracker.entity.GtfsRoute;
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.entity.GtfsTrip;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GtfsStaticCatalogTest {
+
+    private final GtfsRoute king = new GtfsRoute("7", "7", "King", 3);
+    private final GtfsRoute maple = new GtfsRoute("12", "12", "Maple", 3);
+    private final GtfsStop terminal = new GtfsStop("1000", "Charles Terminal", 43.4516, -80.4925);
+    private final GtfsStop victoria = new GtfsStop("1001", "King / Victoria", 43.4528, -80.4950);
+    private final GtfsTrip kingNorth = new GtfsTrip("t1", "7", "Conestoga", 0);
+    private final GtfsTrip mapleEast = new GtfsTrip("t2", "12", "Fairview", 0);
+    private final GtfsTrip kingSouth = new GtfsTrip("t3", "7", "Fairway", 1);
+    private final GtfsTrip orphan = new GtfsTrip("t4", "99", null, null);
+
+    private GtfsStaticCatalog catalog;
+
+    @BeforeEach
+    public void setUp() {
+        GtfsRouteRepository routeRepository = mock(GtfsRouteRepository.class);
+        GtfsStopRepository stopRepository = mock(GtfsStopRepository.class);
+        GtfsTripRepository tripRepository = mock(GtfsTripRepository.class);
+        when(routeRepository.findAll()).thenReturn(List.of(king, maple));
+        when(stopRepository.findAll()).thenReturn(List.of(terminal, victoria));
+        when(tripRepository.findAll()).thenReturn(List.of(kingNorth, mapleEast, orphan, kingSouth));
+
+        catalog = new GtfsStaticCatalog(routeRepository, stopRepository, tripRepository);
+        catalog.refresh(List.of(new StopTimesStore.Builder()
+                .trip("t1", "7")
+                .add("t1", "1001", 2, 0, 0)
+                .add("t1", "1000", 1, 0, 0)
+                .build()));
+    }
+
+    @Test
+    public void testLooksUpEntitiesById() {
+        assertThat(catalog.routes()).containsExactly(king, maple);
+        assertThat(catalog.route("12")).isSameAs(maple);
+        assertThat(catalog.stop("1001")).isSameAs(victoria);
+        assertThat(catalog.trip("t3")).isSameAs(kingSouth);
+        assertThat(catalog.trip("missing")).isNull();
+    }
+
+    @Test
+    public void testCrossReferencesTripsAndRoutes() {
+        assertThat(catalog.tripsForRoute("7")).containsExactly(kingNorth, kingSouth);
+        assertThat(catalog.tripsForRoute("12")).containsExactly(mapleEast);
+        assertThat(catalog.tripsForRoute("99")).isEmpty();
+        assertThat(catalog.routeForTrip("t3")).isSameAs(king);
+        assertThat(catalog.routeForTrip("t4")).isNull();
+        assertThat(catalog.trips()).hasSize(4).endsWith(orphan);
+    }
+
+    @Test
+    public void testRouteStopsAndSpatialQueries() {
+        assertThat(catalog.stopsForRoute("7")).containsExactly(terminal, victoria);
+        assertThat(catalog.stopsForRoute("12")).isEmpty();
+        assertThat(catalog.stopsNear(43.4516, -80.4925, 400, 1)).containsExactly(terminal);
+        assertThat(catalog.stopsInBox(43.452, -80.50, 43.46, -80.49)).containsExactly(victoria);
+    }
+}
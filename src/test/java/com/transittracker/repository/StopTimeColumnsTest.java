@@ -0,0 +1,68 @@
+package com.transittracker.repository;
+
+import com.transittracker.model.StopTimeEvent;
+import com.transittracker.model.StopTimeUpdate;
+import com.transittracker.model.Trip;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StopTimeColumnsTest {
+
+    @Test
+    public void testRowsAreGroupedByStopAndSortedByTime() {
+        Trip late = trip("t1", update(1, "A", 300L, null), update(2, "B", 400L, 500L));
+        Trip early = trip("t2", update(1, "A", 100L, null), update(2, "C", null, 200L));
+        StopTimeColumns columns = new StopTimeColumns(List.of(late, early));
+
+        assertThat(columns.size()).isEqualTo(4);
+        int first = columns.firstRow("A");
+        assertThat(columns.endRow("A") - first).isEqualTo(2);
+        assertThat(columns.trip(first)).isSameAs(early);
+        assertThat(columns.time(first)).isEqualTo(100L);
+        assertThat(columns.trip(first + 1)).isSameAs(late);
+        assertThat(columns.stopSequence(first + 1)).isEqualTo(1);
+
+        int c = columns.firstRow("C");
+        assertThat(columns.arrivalTime(c)).isEqualTo(StopTimeColumns.NO_TIME);
+        assertThat(columns.arrivalDelay(c)).isEqualTo(StopTimeColumns.NO_DELAY);
+        assertThat(columns.departureTime(c)).isEqualTo(200L);
+        assertThat(columns.time(c)).isEqualTo(200L);
+
+        assertThat(columns.firstRow("missing")).isEqualTo(-1);
+    }
+
+    @Test
+    public void testFirstRowAtOrAfterSkipsEarlierAndUntimedRows() {
+        Trip trip1 = trip("t1", update(1, "A", 100L, null));
+        Trip trip2 = trip("t2", update(1, "A", null, null));
+        Trip trip3 = trip("t3", update(1, "A", 200L, null));
+        StopTimeColumns columns = new StopTimeColumns(List.of(trip1, trip2, trip3));
+
+        int row = columns.firstRowAtOrAfter("A", 150L);
+        assertThat(columns.trip(row)).isSameAs(trip3);
+        // The untimed row sorts last and is never "at or after" a time
+        assertThat(columns.firstRowAtOrAfter("A", 250L)).isEqualTo(columns.endRow("A"));
+        assertThat(columns.trip(columns.endRow("A") - 1)).isSameAs(trip2);
+    }
+
+    private static Trip trip(String tripId, StopTimeUpdate... updates) {
+        Trip trip = new Trip();
+        trip.setTripId(tripId);
+        trip.setStopTimeUpdates(List.of(updates));
+        return trip;
+    }
+
+    private static StopTimeUpdate update(int sequence, String stopId, Long arrival, Long departure) {
+        StopTimeUpdate update = new StopTimeUpdate();
+        update.setStopSequence(sequence);
+        update.setStopId(stopId);
+        if (arrival != null)
+            update.setArrival(new StopTimeEvent(arrival, 0));
+        if (departure != null)
+            update.setDeparture(new StopTimeEvent(departure, 0));
+        return update;
+    }
+}
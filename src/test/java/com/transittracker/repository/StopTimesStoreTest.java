@@ -0,0 +1,55 @@
+package com.transittracker.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StopTimesStoreTest {
+
+    @Test
+    public void testParseTimeAllowsServiceDaysPastMidnight() {
+        assertThat(StopTimesStore.parseTime("08:05:30")).isEqualTo(8 * 3600 + 5 * 60 + 30);
+        assertThat(StopTimesStore.parseTime(" 7:00:00")).isEqualTo(7 * 3600);
+        assertThat(StopTimesStore.parseTime("25:10:00")).isEqualTo(25 * 3600 + 10 * 60);
+        assertThat(StopTimesStore.parseTime("")).isEqualTo(StopTimesStore.NO_TIME);
+        assertThat(StopTimesStore.parseTime("8:61:00")).isEqualTo(StopTimesStore.NO_TIME);
+        assertThat(StopTimesStore.parseTime(null)).isEqualTo(StopTimesStore.NO_TIME);
+    }
+
+    @Test
+    public void testLooksUpScheduledTimesWhateverTheRowOrder() {
+        StopTimesStore store = new StopTimesStore.Builder()
+                .add("t2", "C", 3, 300, 310)
+                .add("t1", "B", 2, 200, 210)
+                .add("t2", "A", 1, 100, 110)
+                .add("t1", "A", 1, 100, StopTimesStore.NO_TIME)
+                .build();
+
+        assertThat(store.size()).isEqualTo(4);
+        assertThat(store.scheduledArrival("t2", 3)).isEqualTo(300);
+        assertThat(store.scheduledDeparture("t2", 1)).isEqualTo(110);
+        assertThat(store.scheduledDeparture("t1", 1)).isEqualTo(StopTimesStore.NO_TIME);
+        assertThat(store.scheduledArrival("t2", 2)).isEqualTo(StopTimesStore.NO_TIME);
+        assertThat(store.scheduledArrival("missing", 1)).isEqualTo(StopTimesStore.NO_TIME);
+    }
+
+    @Test
+    public void testRouteStopsFollowTheLongestTripThenAddOthers() {
+        StopTimesStore store = new StopTimesStore.Builder()
+                .trip("short", "7")
+                .trip("long", "7")
+                .trip("other", "12")
+                .add("short", "X", 1, 0, 0)
+                .add("short", "B", 2, 0, 0)
+                .add("long", "C", 3, 0, 0)
+                .add("long", "A", 1, 0, 0)
+                .add("long", "B", 2, 0, 0)
+                .add("other", "Z", 1, 0, 0)
+                .build();
+
+        assertThat(store.stopIdsForRoute("7")).containsExactly("A", "B", "C", "X");
+        assertThat(store.stopIdsForRoute("12")).containsExactly("Z");
+        assertThat(store.stopIdsForRoute("99")).isEmpty();
+        assertThat(store.routeIds()).containsExactlyInAnyOrder("7", "12");
+    }
+}
@@ -0,0 +1,66 @@
+package com.transittracker.repository;
+
+import com.transittracker.config.SubscriptionConfig;
+import com.transittracker.config.SubscriptionConfig.BackpressurePolicy;
+import com.transittracker.model.SubscriberStats;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SubscriberBackpressureTest {
+
+    @Test
+    public void testLatestCountsEachReplacedEvent() {
+        SubscriptionConfig config = mock(SubscriptionConfig.class);
+        when(config.getBackpressurePolicy()).thenReturn(BackpressurePolicy.LATEST);
+        SubscriberBackpressure backpressure = new SubscriberBackpressure(config);
+
+        List<Integer> received = new ArrayList<>();
+        BaseSubscriber<Integer> slow = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                // Request nothing until the test asks
+            }
+
+            @Override
+            protected void hookOnNext(Integer value) {
+                received.add(value);
+            }
+        };
+        backpressure.apply("trips", Flux.just(1, 2, 3, 4, 5)).subscribe(slow);
+
+        SubscriberStats stats = backpressure.getStats().get(0);
+        assertThat(stats.getReceived()).isEqualTo(5);
+        assertThat(stats.getConflated()).isEqualTo(4);
+
+        slow.request(1);
+        assertThat(received).containsExactly(5);
+        assertThat(stats.getConflated()).isEqualTo(4);
+        assertThat(stats.getDropped()).isZero();
+    }
+
+    @Test
+    public void testSingleReplacedEventIsCounted() {
+        SubscriptionConfig config = mock(SubscriptionConfig.class);
+        when(config.getBackpressurePolicy()).thenReturn(BackpressurePolicy.LATEST);
+        SubscriberBackpressure backpressure = new SubscriberBackpressure(config);
+
+        BaseSubscriber<Integer> slow = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+        };
+        backpressure.apply("trips", Flux.just(1, 2)).subscribe(slow);
+
+        assertThat(backpressure.getStats().get(0).getConflated()).isEqualTo(1);
+        slow.dispose();
+    }
+}
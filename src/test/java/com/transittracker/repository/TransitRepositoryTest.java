@@ -0,0 +1,57 @@
+package com.transittracker.repository;
+
+import com.transittracker.config.SubscriptionConfig;
+import com.transittracker.model.Trip;
+import com.transittracker.model.TripDeltaEvent;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TransitRepositoryTest {
+
+    private static Trip trip(String tripId, String routeId) {
+        Trip trip = new Trip();
+        trip.setTripId(tripId);
+        trip.setRouteId(routeId);
+        return trip;
+    }
+
+    private static List<String> tripIds(List<Trip> trips) {
+        return trips.stream().map(Trip::getTripId).toList();
+    }
+
+    @Test
+    public void testTripMovingRouteIsRemovedFromOldRouteAndAddedToNew() {
+        SubscriptionConfig config = mock(SubscriptionConfig.class);
+        when(config.getMaxMissedTicks()).thenReturn(3);
+        TransitRepository repository = new TransitRepository(config);
+        repository.updateTrips(List.of(trip("t1", "7")));
+
+        List<TripDeltaEvent> king = new CopyOnWriteArrayList<>();
+        List<TripDeltaEvent> maple = new CopyOnWriteArrayList<>();
+        Disposable kingSubscription = repository.getTripDeltas("7").subscribe(king::add);
+        Disposable mapleSubscription = repository.getTripDeltas("12").subscribe(maple::add);
+        try {
+            repository.updateTrips(List.of(trip("t1", "12")));
+
+            assertThat(king).hasSize(2);
+            assertThat(tripIds(king.get(0).getAdded())).containsExactly("t1");
+            assertThat(king.get(1).getChanged()).isEmpty();
+            assertThat(tripIds(king.get(1).getRemoved())).containsExactly("t1");
+
+            assertThat(maple).hasSize(2);
+            assertThat(maple.get(0).getAdded()).isEmpty();
+            assertThat(maple.get(1).getChanged()).isEmpty();
+            assertThat(tripIds(maple.get(1).getAdded())).containsExactly("t1");
+        } finally {
+            kingSubscription.dispose();
+            mapleSubscription.dispose();
+        }
+    }
+}
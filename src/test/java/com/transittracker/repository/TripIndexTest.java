@@ -0,0 +1,77 @@
+package com.transittracker.repository;
+
+import com.transittracker.model.StopTimeEvent;
+import com.transittracker.model.StopTimeUpdate;
+import com.transittracker.model.Trip;
+import com.transittracker.model.TripDeltaEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TripIndexTest {
+
+    private static Trip trip(String tripId, String routeId, String stopId, int delay) {
+        StopTimeUpdate update = new StopTimeUpdate();
+        update.setStopSequence(1);
+        update.setStopId(stopId);
+        update.setArrival(new StopTimeEvent(1_700_000_000L + delay, delay));
+
+        Trip trip = new Trip();
+        trip.setTripId(tripId);
+        trip.setRouteId(routeId);
+        trip.setStopTimeUpdates(List.of(update));
+        return trip;
+    }
+
+    @Test
+    public void testDiffReportsAddedChangedAndRemovedTrips() {
+        Trip kept = trip("t1", "7", "1000", 0);
+        Trip delayed = trip("t2", "7", "1000", 0);
+        Trip finished = trip("t3", "12", "1001", 0);
+        TripIndex previous = new TripIndex(List.of(kept, delayed, finished));
+
+        Trip delayedNow = trip("t2", "7", "1000", 60);
+        Trip started = trip("t4", "12", "1001", 0);
+        TripIndex current = new TripIndex(List.of(kept, delayedNow, started), previous);
+
+        TripDeltaEvent delta = current.diff(previous, 2, 1000L);
+        assertThat(delta.getAdded()).containsExactly(started);
+        assertThat(delta.getChanged()).containsExactly(delayedNow);
+        assertThat(delta.getRemoved()).containsExactly(finished);
+        assertThat(delta.getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDiffSkipsTripsWithIdenticalContent() {
+        TripIndex previous = new TripIndex(List.of(trip("t1", "7", "1000", 30)));
+        TripIndex current = new TripIndex(List.of(trip("t1", "7", "1000", 30)), previous);
+
+        assertThat(current.diff(previous, 2, 1000L).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testDiffIgnoresTripsWithoutTripId() {
+        TripIndex previous = new TripIndex(List.of(trip(null, "7", "1000", 0)));
+        TripIndex current = new TripIndex(List.of(trip(null, "7", "1000", 60)), previous);
+
+        assertThat(current.diff(previous, 2, 1000L).isEmpty()).isTrue();
+        assertThat(TripIndex.EMPTY.diff(current, 3, 1000L).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testDiffDetectsIdsWithCollidingStringHashes() {
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+        TripIndex previous = new TripIndex(List.of(trip("t1", "7", "Aa", 0)));
+        Trip moved = trip("t1", "7", "BB", 0);
+        TripIndex current = new TripIndex(List.of(moved), previous);
+        assertThat(current.diff(previous, 2, 1000L).getChanged()).containsExactly(moved);
+
+        TripIndex onRouteAa = new TripIndex(List.of(trip("t1", "Aa", "1000", 0)));
+        Trip rerouted = trip("t1", "BB", "1000", 0);
+        TripIndex onRouteBB = new TripIndex(List.of(rerouted), onRouteAa);
+        assertThat(onRouteBB.diff(onRouteAa, 3, 1000L).getChanged()).containsExactly(rerouted);
+    }
+}
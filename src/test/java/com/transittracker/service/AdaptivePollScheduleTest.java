@@ -0,0 +1,100 @@
+package com.transittracker.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptivePollScheduleTest {
+
+    private static AdaptivePollSchedule newSchedule() {
+        return new AdaptivePollSchedule(Duration.ofSeconds(30), Duration.ofSeconds(5), Duration.ofMinutes(2),
+                Duration.ZERO, true, new Random(42));
+    }
+
+    @Test
+    public void testUsesBaseIntervalUntilCadenceIsKnown() {
+        AdaptivePollSchedule schedule = newSchedule();
+        schedule.recordSuccess(1_000, Instant.ofEpochSecond(1_001));
+
+        assertThat(schedule.nextDelay(Instant.ofEpochSecond(1_001))).isEqualTo(Duration.ofSeconds(30));
+    }
+
+    @Test
+    public void testPollsJustAfterExpectedPublish() {
+        AdaptivePollSchedule schedule = newSchedule();
+        // Producer publishes every 15s; we see each publication 1s late
+        schedule.recordSuccess(1_000, Instant.ofEpochSecond(1_001));
+        schedule.recordSuccess(1_015, Instant.ofEpochSecond(1_016));
+        schedule.recordSuccess(1_030, Instant.ofEpochSecond(1_031));
+
+        assertThat(schedule.estimatedPublishInterval()).isEqualTo(Duration.ofSeconds(15));
+        // Next publish at 1_045, visible from 1_046
+        assertThat(schedule.nextDelay(Instant.ofEpochSecond(1_031))).isEqualTo(Duration.ofSeconds(15));
+    }
+
+    @Test
+    public void testOverduePublishPollsAtMinimumInterval() {
+        AdaptivePollSchedule schedule = newSchedule();
+        schedule.recordSuccess(1_000, Instant.ofEpochSecond(1_000));
+        schedule.recordSuccess(1_015, Instant.ofEpochSecond(1_015));
+
+        assertThat(schedule.nextDelay(Instant.ofEpochSecond(1_040))).isEqualTo(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void testRepeatedOverdueChecksBackOffUpToMaximum() {
+        AdaptivePollSchedule schedule = newSchedule();
+        schedule.recordSuccess(1_000, Instant.ofEpochSecond(1_000));
+        schedule.recordSuccess(1_015, Instant.ofEpochSecond(1_015));
+
+        // The producer stalls; the first few checks stay at the minimum
+        long now = 1_030;
+        for (int i = 0; i < 3; i++) {
+            assertThat(schedule.nextDelay(Instant.ofEpochSecond(now))).isEqualTo(Duration.ofSeconds(5));
+            now += 5;
+            schedule.recordSuccess(1_015, Instant.ofEpochSecond(now));
+        }
+        assertThat(schedule.nextDelay(Instant.ofEpochSecond(now))).isEqualTo(Duration.ofSeconds(10));
+        schedule.recordSuccess(1_015, Instant.ofEpochSecond(now += 10));
+        assertThat(schedule.nextDelay(Instant.ofEpochSecond(now))).isEqualTo(Duration.ofSeconds(20));
+        for (int i = 0; i < 4; i++) {
+            schedule.recordSuccess(1_015, Instant.ofEpochSecond(now += 60));
+        }
+        assertThat(schedule.nextDelay(Instant.ofEpochSecond(now))).isEqualTo(Duration.ofMinutes(2));
+
+        // A new publish, seen late, resets the backoff
+        schedule.recordSuccess(1_030, Instant.ofEpochSecond(now));
+        assertThat(schedule.nextDelay(Instant.ofEpochSecond(now))).isEqualTo(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void testUnchangedPollBeforeExpectedPublishIsNotAMiss() {
+        AdaptivePollSchedule schedule = newSchedule();
+        schedule.recordSuccess(1_000, Instant.ofEpochSecond(1_000));
+        schedule.recordSuccess(1_015, Instant.ofEpochSecond(1_015));
+        for (int i = 0; i < 5; i++) {
+            schedule.recordSuccess(1_015, Instant.ofEpochSecond(1_020));
+        }
+
+        assertThat(schedule.nextDelay(Instant.ofEpochSecond(1_030))).isEqualTo(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void testFailuresBackOffExponentiallyUpToMaximum() {
+        AdaptivePollSchedule schedule = newSchedule();
+
+        schedule.recordFailure();
+        assertThat(schedule.nextDelay(Instant.now())).isEqualTo(Duration.ofSeconds(60));
+        schedule.recordFailure();
+        assertThat(schedule.nextDelay(Instant.now())).isEqualTo(Duration.ofMinutes(2));
+        schedule.recordFailure();
+        assertThat(schedule.nextDelay(Instant.now())).isEqualTo(Duration.ofMinutes(2));
+
+        schedule.recordSuccess(0, Instant.now());
+        assertThat(schedule.nextDelay(Instant.now())).isEqualTo(Duration.ofSeconds(30));
+    }
+}
@@ -0,0 +1,118 @@
+package com.transittracker.service;
+
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+import com.transittracker.config.RealtimeFeed;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConversionCacheTest {
+
+    private static final UnaryOperator<String> NOT_STATIC = id -> null;
+
+    private final RealtimeFeed feed = new RealtimeFeed("grt", null, null, Duration.ofSeconds(30),
+            Duration.ofSeconds(10));
+
+    private static FeedEntity entity(String id, String routeId) {
+        return FeedEntity.newBuilder()
+                .setId(id)
+                .setTripUpdate(TripUpdate.newBuilder()
+                        .setTrip(TripDescriptor.newBuilder().setTripId("trip-" + id).setRouteId(routeId)))
+                .build();
+    }
+
+    @Test
+    public void testUnchangedEntityReusesPreviousValue() {
+        ConversionCache<Object> cache = new ConversionCache<>();
+        Object converted = new Object();
+
+        ConversionCache.Generation<Object> first = cache.next();
+        assertThat(first.reuse(entity("1", "7"))).isNull();
+        first.record(entity("1", "7"), converted);
+        cache.commit(first);
+
+        ConversionCache.Generation<Object> second = cache.next();
+        assertThat(second.reuse(entity("1", "7"))).isSameAs(converted);
+        assertThat(second.reuse(entity("1", "8"))).isNull();
+        assertThat(second.previousValue(entity("1", "8"))).isSameAs(converted);
+    }
+
+    @Test
+    public void testUncommittedGenerationIsDiscarded() {
+        ConversionCache<Object> cache = new ConversionCache<>();
+        ConversionCache.Generation<Object> partial = cache.next();
+        partial.record(entity("1", "7"), new Object());
+
+        assertThat(cache.next().reuse(entity("1", "7"))).isNull();
+    }
+
+    @Test
+    public void testIdsAreNamespacedAndInterned() {
+        ConversionCache<Object> cache = new ConversionCache<>();
+        ConversionCache.Generation<Object> first = cache.next();
+        String id = first.id(feed, "7", NOT_STATIC);
+        cache.commit(first);
+
+        assertThat(id).isEqualTo("grt:7");
+        assertThat(cache.next().id(feed, new String("7"), NOT_STATIC)).isSameAs(id);
+    }
+
+    @Test
+    public void testIdsAreInternedAgainstStaticIds() {
+        String staticId = new String("grt:7");
+        ConversionCache<Object> cache = new ConversionCache<>();
+
+        String id = cache.next().id(feed, "7", namespaced -> namespaced.equals(staticId) ? staticId : null);
+
+        assertThat(id).isSameAs(staticId);
+    }
+
+    @Test
+    public void testPartDigestsCarryOverToTheNextPoll() {
+        ConversionCache<Object> cache = new ConversionCache<>();
+        Object converted = new Object();
+        ConversionCache.Generation<Object> first = cache.next();
+        FeedEntity entity = entity("1", "7");
+        first.reuse(entity);
+        long[] parts = { first.digest(entity.getTripUpdate().getTrip()) };
+        first.parts(parts);
+        first.record(entity, converted);
+        cache.commit(first);
+
+        // Reused wholesale, so the parts are kept without being recomputed
+        ConversionCache.Generation<Object> second = cache.next();
+        second.record(entity, second.reuse(entity));
+        cache.commit(second);
+
+        ConversionCache.Generation<Object> third = cache.next();
+        assertThat(third.reuse(entity("1", "8"))).isNull();
+        assertThat(third.previousParts(entity("1", "8"))).containsExactly(parts);
+        assertThat(third.digest(entity.getTripUpdate().getTrip())).isEqualTo(parts[0]);
+        assertThat(third.digest(entity("1", "8").getTripUpdate().getTrip())).isNotEqualTo(parts[0]);
+    }
+
+    @Test
+    public void testIdsOfReusedEntitiesStayInterned() {
+        ConversionCache<Object> cache = new ConversionCache<>();
+        ConversionCache.Generation<Object> first = cache.next();
+        first.reuse(entity("1", "7"));
+        String routeId = first.id(feed, "7", NOT_STATIC);
+        first.record(entity("1", "7"), new Object());
+        cache.commit(first);
+
+        // Reused wholesale, so "7" is not looked up this poll
+        ConversionCache.Generation<Object> second = cache.next();
+        Object reused = second.reuse(entity("1", "7"));
+        second.record(entity("1", "7"), reused);
+        cache.commit(second);
+
+        ConversionCache.Generation<Object> third = cache.next();
+        assertThat(third.reuse(entity("1", "8"))).isNull();
+        assertThat(third.id(feed, new String("7"), NOT_STATIC)).isSameAs(routeId);
+    }
+}
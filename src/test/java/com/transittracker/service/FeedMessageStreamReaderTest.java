@@ -0,0 +1,98 @@
+package com.transittracker.service;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnknownFieldSet;
+import com.google.transit.realtime.GtfsRealtime.FeedEntity;
+import com.google.transit.realtime.GtfsRealtime.FeedHeader;
+import com.google.transit.realtime.GtfsRealtime.FeedMessage;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
+import com.google.transit.realtime.GtfsRealtime.TripUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FeedMessageStreamReaderTest {
+
+    private static final FeedHeader HEADER = FeedHeader.newBuilder()
+            .setGtfsRealtimeVersion("2.0")
+            .setTimestamp(1_700_000_000L)
+            .build();
+
+    private static FeedEntity entity(String id, String tripId) {
+        return FeedEntity.newBuilder()
+                .setId(id)
+                .setTripUpdate(TripUpdate.newBuilder()
+                        .setTrip(TripDescriptor.newBuilder().setTripId(tripId).setRouteId("7")))
+                .build();
+    }
+
+    private static final FeedMessage MESSAGE = FeedMessage.newBuilder()
+            .setHeader(HEADER)
+            .addEntity(entity("1", "t1"))
+            .addEntity(entity("2", "t2"))
+            .build();
+
+    @Test
+    public void testReadsHeaderThenEntities() throws Exception {
+        List<Object> seen = new ArrayList<>();
+        boolean complete = FeedMessageStreamReader.read(new ByteArrayInputStream(MESSAGE.toByteArray()),
+                header -> seen.add(header), entity -> seen.add(entity));
+
+        assertThat(complete).isTrue();
+        assertThat(seen).containsExactly(HEADER, MESSAGE.getEntity(0), MESSAGE.getEntity(1));
+    }
+
+    @Test
+    public void testStopsAfterHeaderWhenAsked() throws Exception {
+        List<FeedEntity> entities = new ArrayList<>();
+        boolean complete = FeedMessageStreamReader.read(new ByteArrayInputStream(MESSAGE.toByteArray()),
+                header -> header.getTimestamp() != 1_700_000_000L, entities::add);
+
+        assertThat(complete).isFalse();
+        assertThat(entities).isEmpty();
+    }
+
+    @Test
+    public void testSkipsUnknownFields() throws Exception {
+        // Concatenated messages merge, so an unknown field can sit between the
+        // header and the entities
+        FeedMessage unknown = FeedMessage.newBuilder()
+                .setHeader(HEADER)
+                .setUnknownFields(UnknownFieldSet.newBuilder()
+                        .addField(99, UnknownFieldSet.Field.newBuilder()
+                                .addVarint(42)
+                                .addLengthDelimited(ByteString.copyFromUtf8("ignored"))
+                                .build())
+                        .build())
+                .build();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        unknown.writeTo(body);
+        FeedMessage.newBuilder().addEntity(entity("1", "t1")).build().writeTo(body);
+
+        List<FeedEntity> entities = new ArrayList<>();
+        boolean complete = FeedMessageStreamReader.read(new ByteArrayInputStream(body.toByteArray()),
+                header -> true, entities::add);
+
+        assertThat(complete).isTrue();
+        assertThat(entities).containsExactly(entity("1", "t1"));
+    }
+
+    @Test
+    public void testTruncatedBodyFails() {
+        byte[] bytes = MESSAGE.toByteArray();
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+
+        assertThatThrownBy(() -> FeedMessageStreamReader.read(new ByteArrayInputStream(truncated),
+                header -> true, entity -> {
+                }))
+                .isInstanceOf(InvalidProtocolBufferException.class);
+    }
+}
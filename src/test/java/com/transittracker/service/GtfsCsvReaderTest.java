@@ -0,0 +1,52 @@
+package com.transittracker.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GtfsCsvReaderTest {
+
+    private static GtfsCsvReader reader(String csv) throws IOException {
+        return new GtfsCsvReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testReadsHeaderAfterByteOrderMark() throws IOException {
+        try (GtfsCsvReader csv = reader("\uFEFFroute_id,route_short_name\r\n7,Mainline\r\n")) {
+            assertThat(csv.next()).isTrue();
+            assertThat(csv.indexOf("route_id")).isEqualTo(0);
+            assertThat(csv.indexOf("route_long_name")).isEqualTo(-1);
+
+            assertThat(csv.next()).isTrue();
+            assertThat(csv.get(0)).isEqualTo("7");
+            assertThat(csv.get(1)).isEqualTo("Mainline");
+            assertThat(csv.next()).isFalse();
+        }
+    }
+
+    @Test
+    public void testHandlesQuotedFields() throws IOException {
+        try (GtfsCsvReader csv = reader("id,name,desc\n1,\"King, North\",\"Says \"\"hi\"\"\nand bye\",\n")) {
+            csv.next();
+            assertThat(csv.next()).isTrue();
+            assertThat(csv.size()).isEqualTo(4);
+            assertThat(csv.get(1)).isEqualTo("King, North");
+            assertThat(csv.get(2)).isEqualTo("Says \"hi\"\nand bye");
+            assertThat(csv.get(3)).isEmpty();
+        }
+    }
+
+    @Test
+    public void testMissingColumnReturnsNull() throws IOException {
+        try (GtfsCsvReader csv = reader("a,b\n1\n")) {
+            csv.next();
+            csv.next();
+            assertThat(csv.get(1)).isNull();
+            assertThat(csv.get(-1)).isNull();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.transittracker.service;
+
+import com.transittracker.config.GtfsConfig;
+import com.transittracker.entity.GtfsRoute;
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.entity.GtfsTrip;
+import com.transittracker.repository.GtfsBulkRepository;
+import com.transittracker.repository.StopTimesStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GtfsSnapshotStoreTest {
+
+    @TempDir
+    Path snapshotDir;
+
+    private GtfsSnapshotStore store;
+
+    private final List<GtfsRoute> routes = new ArrayList<>();
+    private final List<GtfsStop> stops = new ArrayList<>();
+    private final List<GtfsTrip> trips = new ArrayList<>();
+
+    private final GtfsBulkRepository bulkRepository = new GtfsBulkRepository(null) {
+        @Override
+        public void mergeRoutes(List<GtfsRoute> batch) {
+            routes.addAll(batch);
+        }
+
+        @Override
+        public void mergeStops(List<GtfsStop> batch) {
+            stops.addAll(batch);
+        }
+
+        @Override
+        public void mergeTrips(List<GtfsTrip> batch) {
+            trips.addAll(batch);
+        }
+    };
+
+    @BeforeEach
+    public void setUp() {
+        GtfsConfig config = mock(GtfsConfig.class);
+        when(config.getStaticSnapshotDir()).thenReturn(snapshotDir.toString());
+        store = new GtfsSnapshotStore(config);
+    }
+
+    @Test
+    public void testCommittedSnapshotRoundTrips() throws Exception {
+        try (GtfsSnapshotStore.SnapshotWriter writer = store.open("feed", "\"v1\"", null)) {
+            writer.writeRoute(new GtfsRoute("7", "7", "Mainline", 3));
+            writer.writeStop(new GtfsStop("1000", "King / Erb", 43.46, null));
+            writer.writeTrip(new GtfsTrip("t1", "7", null, 0));
+            writer.writeStopTime("t1", "1000", 1, 3600, 3630);
+            writer.commit("abc123");
+        }
+
+        GtfsSnapshotStore.SnapshotHeader header = store.readHeader("feed");
+        assertThat(header.getEtag()).isEqualTo("\"v1\"");
+        assertThat(header.getLastModified()).isNull();
+        assertThat(header.getContentHash()).isEqualTo("abc123");
+
+        BatchWriter batchWriter = new BatchWriter(Runnable::run, new Semaphore(1));
+        StaticEntitySink sink = new StaticEntitySink(bulkRepository, batchWriter, 10, null, null);
+        assertThat(store.load("feed", sink)).isTrue();
+        sink.flush();
+        batchWriter.await();
+        StopTimesStore stopTimes = sink.buildStopTimes();
+
+        assertThat(routes).singleElement().satisfies(route -> {
+            assertThat(route.getRouteLongName()).isEqualTo("Mainline");
+            assertThat(route.getRouteType()).isEqualTo(3);
+        });
+        assertThat(stops).singleElement().satisfies(stop -> {
+            assertThat(stop.getStopLat()).isEqualTo(43.46);
+            assertThat(stop.getStopLon()).isNull();
+        });
+        assertThat(trips).singleElement().satisfies(trip -> {
+            assertThat(trip.getTripHeadsign()).isNull();
+            assertThat(trip.getDirectionId()).isEqualTo(0);
+        });
+        assertThat(stopTimes.scheduledDeparture("t1", 1)).isEqualTo(3630);
+        assertThat(stopTimes.stopIdsForRoute("7")).containsExactly("1000");
+    }
+
+    @Test
+    public void testSpooledDownloadIsHashed() throws Exception {
+        byte[] zip = "PK not really a zip".getBytes(StandardCharsets.UTF_8);
+        MessageDigest digest = GtfsSnapshotStore.sha256();
+
+        Path file = store.spool(new ByteArrayInputStream(zip), digest);
+
+        assertThat(file).hasBinaryContent(zip);
+        assertThat(digest.digest()).isEqualTo(GtfsSnapshotStore.sha256().digest(zip));
+    }
+
+    @Test
+    public void testUncommittedSnapshotIsDiscarded() throws Exception {
+        try (GtfsSnapshotStore.SnapshotWriter writer = store.open("feed", "\"v1\"", null)) {
+            writer.writeRoute(new GtfsRoute("7", "7", "Mainline", 3));
+        }
+
+        assertThat(store.readHeader("feed")).isNull();
+        assertThat(snapshotDir).isEmptyDirectory();
+    }
+}
@@ -0,0 +1,63 @@
+package com.transittracker.service;
+
+import com.transittracker.repository.StopTimesStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScheduledTimesTest {
+
+    private static final ZoneId TORONTO = ZoneId.of("America/Toronto");
+
+    private final StopTimesStore store = new StopTimesStore.Builder()
+            .trip("t1", "7")
+            .add("t1", "1000", 1, 8 * 3600, 8 * 3600 + 60)
+            .add("t1", "1001", 2, 25 * 3600, 25 * 3600)
+            .build();
+
+    private static long at(int year, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, TORONTO).toEpochSecond();
+    }
+
+    @Test
+    public void testDelayIsAddedToTheScheduleOfTheStartDate() {
+        ScheduledTimes schedule = new ScheduledTimes(List.of(store), TORONTO, at(2026, 1, 10, 7, 0));
+
+        assertThat(schedule.arrival("t1", "20260110", 1, 120)).isEqualTo(at(2026, 1, 10, 8, 2));
+        assertThat(schedule.departure("t1", "20260110", 1, -30)).isEqualTo(at(2026, 1, 10, 8, 0) + 30);
+        // Past midnight of the service day
+        assertThat(schedule.arrival("t1", "20260110", 2, 0)).isEqualTo(at(2026, 1, 11, 1, 0));
+    }
+
+    @Test
+    public void testServiceDayCountsFromNoonMinusTwelveHours() {
+        // Clocks spring forward at 2:00 on March 8, 2026; counting from midnight
+        // would put 08:00 at 9:00 on the clock
+        ScheduledTimes schedule = new ScheduledTimes(List.of(store), TORONTO, at(2026, 3, 8, 7, 0));
+
+        assertThat(schedule.arrival("t1", "20260308", 1, 0)).isEqualTo(at(2026, 3, 8, 8, 0));
+    }
+
+    @Test
+    public void testWithoutStartDateUsesTheNearestServiceDay() {
+        ScheduledTimes morning = new ScheduledTimes(List.of(store), TORONTO, at(2026, 1, 10, 7, 50));
+        assertThat(morning.arrival("t1", null, 1, 60)).isEqualTo(at(2026, 1, 10, 8, 1));
+
+        // At 00:50 the 25:00 stop time belongs to yesterday's service
+        ScheduledTimes night = new ScheduledTimes(List.of(store), TORONTO, at(2026, 1, 11, 0, 50));
+        assertThat(night.arrival("t1", "", 2, 0)).isEqualTo(at(2026, 1, 11, 1, 0));
+    }
+
+    @Test
+    public void testUnknownStopTimeIsUnresolved() {
+        ScheduledTimes schedule = new ScheduledTimes(List.of(StopTimesStore.EMPTY, store), TORONTO,
+                at(2026, 1, 10, 7, 0));
+
+        assertThat(schedule.arrival("t2", "20260110", 1, 60)).isEqualTo(ScheduledTimes.UNRESOLVED);
+        assertThat(schedule.arrival("t1", "20260110", 9, 60)).isEqualTo(ScheduledTimes.UNRESOLVED);
+    }
+}
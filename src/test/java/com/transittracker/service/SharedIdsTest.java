@@ -0,0 +1,44 @@
+package com.transittracker.service;
+
+import com.transittracker.entity.GtfsStop;
+import com.transittracker.repository.GtfsBulkRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SharedIdsTest {
+
+    private final GtfsStop firstFeedStop = new GtfsStop("1000", "Charles Terminal", 43.4516, -80.4925);
+    private final GtfsStop secondFeedStop = new GtfsStop("1000", "Charles St Terminal", 43.4516, -80.4925);
+
+    @Test
+    public void testLastConfiguredFeedWinsWhenItWritesSecond() {
+        SharedIds sharedIds = new SharedIds();
+        assertThat(sharedIds.forFeed(0).writeStop(firstFeedStop)).isTrue();
+        assertThat(sharedIds.forFeed(1).writeStop(secondFeedStop)).isFalse();
+
+        GtfsBulkRepository bulkRepository = mock(GtfsBulkRepository.class);
+        sharedIds.writeHeldRows(bulkRepository, 100);
+
+        assertThat(sharedIds.sharedStops()).isEqualTo(1);
+        verify(bulkRepository).mergeStops(List.of(secondFeedStop));
+    }
+
+    @Test
+    public void testLastConfiguredFeedWinsWhenItWritesFirst() {
+        SharedIds sharedIds = new SharedIds();
+        assertThat(sharedIds.forFeed(1).writeStop(secondFeedStop)).isTrue();
+        assertThat(sharedIds.forFeed(0).writeStop(firstFeedStop)).isFalse();
+
+        GtfsBulkRepository bulkRepository = mock(GtfsBulkRepository.class);
+        sharedIds.writeHeldRows(bulkRepository, 100);
+
+        verify(bulkRepository, never()).mergeStops(anyList());
+    }
+}